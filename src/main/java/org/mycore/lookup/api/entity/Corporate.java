@@ -68,7 +68,7 @@ public class Corporate extends MappedIdentifiers<Corporate> {
     /**
      * @return the name
      */
-    @Field(analyze = true, store = true)
+    @Field(analyze = true, store = true, complete = true, phonetic = true)
     @XmlElement
     @RDFMappings({
         @RDFMapping(uri = "http://schema.org/name"),
@@ -90,7 +90,7 @@ public class Corporate extends MappedIdentifiers<Corporate> {
     /**
      * @return the dateOfEstablishment
      */
-    @Field(store = true, adapter = DateTemporalAccessorFieldAdapter.class)
+    @Field(store = true, year = true, adapter = DateTemporalAccessorFieldAdapter.class)
     @XmlElement
     @XmlJavaTypeAdapter(DateTemporalAccessorAdapter.class)
     @RDFMappings({
@@ -110,7 +110,7 @@ public class Corporate extends MappedIdentifiers<Corporate> {
     /**
      * @return the dateOfTermination
      */
-    @Field(store = true, adapter = DateTemporalAccessorFieldAdapter.class)
+    @Field(store = true, year = true, adapter = DateTemporalAccessorFieldAdapter.class)
     @XmlElement
     @XmlJavaTypeAdapter(DateTemporalAccessorAdapter.class)
     @RDFMappings({
@@ -185,7 +185,7 @@ public class Corporate extends MappedIdentifiers<Corporate> {
     /**
      * @return the alternateNames
      */
-    @Field(analyze = true, store = true)
+    @Field(analyze = true, store = true, complete = true, phonetic = true)
     @XmlElement(name = "alternateName")
     @RDFMappings({
         @RDFMapping(uri = "http://schema.org/alternateName"),
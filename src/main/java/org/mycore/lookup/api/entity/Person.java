@@ -119,7 +119,7 @@ public class Person extends MappedIdentifiers<Person> {
     /**
      * @return the displayName
      */
-    @Field(analyze = true)
+    @Field(analyze = true, complete = true)
     public String getDisplayName() {
         return familyName != null && givenName != null ? familyName + ", " + givenName : null;
     }
@@ -127,7 +127,7 @@ public class Person extends MappedIdentifiers<Person> {
     /**
      * @return the givenName
      */
-    @Field(analyze = true, store = true)
+    @Field(analyze = true, store = true, phonetic = true)
     @XmlElement
     @RDFMappings({
         @RDFMapping(uri = "http://schema.org/name", adapter = Name2FamilyNameAdapter.class),
@@ -152,7 +152,7 @@ public class Person extends MappedIdentifiers<Person> {
     /**
      * @return the givenName
      */
-    @Field(analyze = true, store = true)
+    @Field(analyze = true, store = true, phonetic = true)
     @XmlElement
     @RDFMappings({
         @RDFMapping(uri = "http://schema.org/name", adapter = Name2GivenNameAdapter.class),
@@ -177,7 +177,7 @@ public class Person extends MappedIdentifiers<Person> {
     /**
      * @return the dateOfBirth
      */
-    @Field(store = true, adapter = DateTemporalAccessorFieldAdapter.class)
+    @Field(store = true, year = true, adapter = DateTemporalAccessorFieldAdapter.class)
     @XmlElement
     @XmlJavaTypeAdapter(DateTemporalAccessorAdapter.class)
     @RDFMappings({
@@ -198,7 +198,7 @@ public class Person extends MappedIdentifiers<Person> {
     /**
      * @return the dateOfDeath
      */
-    @Field(store = true, adapter = DateTemporalAccessorFieldAdapter.class)
+    @Field(store = true, year = true, adapter = DateTemporalAccessorFieldAdapter.class)
     @XmlElement
     @XmlJavaTypeAdapter(DateTemporalAccessorAdapter.class)
     @RDFMappings({
@@ -270,7 +270,7 @@ public class Person extends MappedIdentifiers<Person> {
     /**
      * @return the alternateNames
      */
-    @Field(analyze = true, store = true)
+    @Field(analyze = true, store = true, complete = true, phonetic = true)
     @XmlElement(name = "alternateName")
     @RDFMappings({
         @RDFMapping(uri = "http://schema.org/alternateName", adapter = AlternateNameAdapter.class),
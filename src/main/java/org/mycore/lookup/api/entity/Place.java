@@ -51,7 +51,7 @@ public class Place extends MappedIdentifiers<Place> {
     /**
      * @return the name
      */
-    @Field(analyze = true, store = true)
+    @Field(analyze = true, store = true, complete = true, phonetic = true)
     @XmlElement
     @RDFMapping(uri = "http://d-nb.info/standards/elementset/gnd#preferredNameForThePlaceOrGeographicName")
     public String getName() {
@@ -102,7 +102,7 @@ public class Place extends MappedIdentifiers<Place> {
     /**
      * @return the alternateNames
      */
-    @Field(analyze = true, store = true)
+    @Field(analyze = true, store = true, complete = true, phonetic = true)
     @XmlElement
     @RDFMapping(uri = "http://d-nb.info/standards/elementset/gnd#variantNameForThePlaceOrGeographicName")
     public List<String> getAlternateNames() {
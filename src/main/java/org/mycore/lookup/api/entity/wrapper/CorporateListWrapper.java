@@ -21,6 +21,7 @@ package org.mycore.lookup.api.entity.wrapper;
 
 import java.util.List;
 
+import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 
@@ -35,6 +36,10 @@ public class CorporateListWrapper {
 
     private List<Corporate> corporates;
 
+    private Long totalHits;
+
+    private String cursor;
+
     /**
      * @return the corporates
      */
@@ -51,4 +56,36 @@ public class CorporateListWrapper {
         return this;
     }
 
+
+    /**
+     * @return the number of all matching corporates, only set for paged results
+     */
+    @XmlAttribute(name = "totalHits")
+    public Long getTotalHits() {
+        return totalHits;
+    }
+
+    /**
+     * @param totalHits the number of all matching corporates
+     */
+    public CorporateListWrapper setTotalHits(Long totalHits) {
+        this.totalHits = totalHits;
+        return this;
+    }
+
+    /**
+     * @return the cursor of the following page, only set for paged results
+     */
+    @XmlAttribute(name = "cursor")
+    public String getCursor() {
+        return cursor;
+    }
+
+    /**
+     * @param cursor the cursor of the following page
+     */
+    public CorporateListWrapper setCursor(String cursor) {
+        this.cursor = cursor;
+        return this;
+    }
 }
@@ -21,6 +21,7 @@ package org.mycore.lookup.api.entity.wrapper;
 
 import java.util.List;
 
+import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 
@@ -35,6 +36,10 @@ public class PlaceListWrapper {
 
     private List<Place> places;
 
+    private Long totalHits;
+
+    private String cursor;
+
     /**
      * @return the persons
      */
@@ -50,4 +55,36 @@ public class PlaceListWrapper {
         this.places = places;
         return this;
     }
+
+    /**
+     * @return the number of all matching places, only set for paged results
+     */
+    @XmlAttribute(name = "totalHits")
+    public Long getTotalHits() {
+        return totalHits;
+    }
+
+    /**
+     * @param totalHits the number of all matching places
+     */
+    public PlaceListWrapper setTotalHits(Long totalHits) {
+        this.totalHits = totalHits;
+        return this;
+    }
+
+    /**
+     * @return the cursor of the following page, only set for paged results
+     */
+    @XmlAttribute(name = "cursor")
+    public String getCursor() {
+        return cursor;
+    }
+
+    /**
+     * @param cursor the cursor of the following page
+     */
+    public PlaceListWrapper setCursor(String cursor) {
+        this.cursor = cursor;
+        return this;
+    }
 }
@@ -20,15 +20,28 @@
 package org.mycore.lookup.api.event;
 
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.mycore.lookup.api.entity.IdType;
+import org.mycore.lookup.api.entity.Person;
 import org.mycore.lookup.api.service.LookupService;
 import org.mycore.lookup.api.service.LookupService.Type;
+import org.mycore.lookup.backend.index.IndexManager;
+import org.mycore.lookup.common.config.Configuration;
 import org.mycore.lookup.common.event.Event;
 import org.mycore.lookup.common.event.Listener;
 import org.mycore.lookup.common.event.annotation.EventListener;
 
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /**
  * @author Ren\u00E9 Adler (eagle)
  *
@@ -38,6 +51,15 @@ public class ImportEventListener implements Listener {
 
     public static final String EVENT_IMPORT_PERSONS = "importPersons";
 
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final int BATCH_SIZE = Configuration.instance().getInt("Import.BatchSize", 1000);
+
+    // the remote lookups of the batches run here instead of the calling thread
+    private static final ExecutorService LOOKUP_EXECUTOR = Executors.newFixedThreadPool(
+        Configuration.instance().getInt("Import.Threads", Runtime.getRuntime().availableProcessors()),
+        new ThreadFactoryBuilder().setNameFormat("import-%d").setDaemon(true).build());
+
     /* (non-Javadoc)
      * @see org.mycore.lookup.common.event.Listener#handleEvent(org.mycore.lookup.common.event.Event)
      */
@@ -45,10 +67,43 @@ public class ImportEventListener implements Listener {
     @Override
     public <T> void handleEvent(Event<T> event) throws Exception {
         if (event != null && EVENT_IMPORT_PERSONS.equals(event.getType())) {
-            Optional.ofNullable(event.getObject()).ifPresent(ids -> ((List<String>) ids).parallelStream()
-                .peek(id -> LogManager.getLogger().info("Import {}", id))
-                .forEach(id -> LookupService.lookup(Type.PERSON, id)));
+            Optional.ofNullable(event.getObject())
+                .ifPresent(ids -> importPersons((List<String>) ids));
         }
     }
 
+    /**
+     * Looks up and indexes the persons with given ids in batches of <code>Import.BatchSize</code>. The lookups
+     * run asynchronously on <code>Import.Threads</code> threads.
+     * 
+     * @param ids the person ids
+     * @return the completion handle, completes after all found persons are visible in the index
+     */
+    public static CompletableFuture<Void> importPersons(List<String> ids) {
+        return CompletableFuture.allOf(Lists.partition(ids, BATCH_SIZE).stream()
+            .map(ImportEventListener::importBatch).toArray(CompletableFuture[]::new));
+    }
+
+    private static CompletableFuture<Void> importBatch(List<String> ids) {
+        return CompletableFuture.supplyAsync(() -> lookup(ids), LOOKUP_EXECUTOR)
+            .thenCompose(persons -> persons.isEmpty() ? CompletableFuture.<Void> completedFuture(null)
+                : IndexManager.instance().set(persons).thenRun(
+                    () -> LOGGER.info("Indexed {} of {} imported persons.", persons.size(), ids.size())))
+            .whenComplete((v, e) -> {
+                if (e != null) {
+                    LOGGER.error("Error while importing persons.", e);
+                }
+            });
+    }
+
+    private static List<Person> lookup(List<String> ids) {
+        return ids.parallelStream()
+            .peek(id -> LOGGER.info("Import {}", id))
+            .map(IdType::parse)
+            .filter(Objects::nonNull)
+            .map(idType -> LookupService.<Person> lookup(Type.PERSON, idType, false))
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
+    }
+
 }
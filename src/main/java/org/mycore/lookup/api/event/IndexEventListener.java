@@ -35,19 +35,13 @@ public class IndexEventListener implements Listener {
 
     public static final String EVENT_INDEX = "index";
 
-    private final IndexManager idx;
-
-    public IndexEventListener() {
-        idx = IndexManager.instance();
-    }
-
     /* (non-Javadoc)
      * @see org.mycore.lookup.common.event.Listener#handleEvent(org.mycore.lookup.common.event.Event)
      */
     @Override
     public <T> void handleEvent(Event<T> event) throws Exception {
         if (event != null && EVENT_INDEX.equals(event.getType())) {
-            Optional.ofNullable(event.getObject()).ifPresent(idx::set);
+            Optional.ofNullable(event.getObject()).ifPresent(IndexManager.instance()::set);
         }
     }
 
@@ -19,7 +19,6 @@
  */
 package org.mycore.lookup.api.rdf;
 
-import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.URI;
@@ -43,6 +42,7 @@ import org.mycore.lookup.api.entity.Scheme;
 import org.mycore.lookup.api.rdf.adapter.RDFMappingAdapter;
 import org.mycore.lookup.api.rdf.annotation.RDFMapping;
 import org.mycore.lookup.api.rdf.annotation.RDFMapping.RDFMappings;
+import org.mycore.lookup.util.AdapterRegistry;
 import org.mycore.lookup.util.ObjectTools;
 
 /**
@@ -148,8 +148,7 @@ public class RDFMapper {
                             setter.invoke(obj, adapter(a).unmarshal(value));
                         }
                         numMapped.incrementAndGet();
-                    } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException
-                        | NoSuchMethodException | SecurityException | InstantiationException e) {
+                    } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
                         throw (RuntimeException) e.getCause();
                     }
                 }
@@ -177,12 +176,8 @@ public class RDFMapper {
     }
 
     @SuppressWarnings("rawtypes")
-    private static RDFMappingAdapter adapter(RDFMapping a) throws NoSuchMethodException, SecurityException,
-        InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException {
-        Class<? extends RDFMappingAdapter> aCls = a.adapter();
-        Constructor<?> constructor = aCls.getDeclaredConstructor();
-        constructor.setAccessible(true);
-        return (RDFMappingAdapter) constructor.newInstance();
+    private static RDFMappingAdapter adapter(RDFMapping a) {
+        return AdapterRegistry.instance(a.adapter());
     }
 
 }
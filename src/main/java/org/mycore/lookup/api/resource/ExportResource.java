@@ -0,0 +1,103 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See http://www.mycore.de/ for details.
+ *
+ * This program is free software; you can use it, redistribute it
+ * and / or modify it under the terms of the GNU General Public License
+ * (GPL) as published by the Free Software Foundation; either version 2
+ * of the License or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program, in a file called gpl.txt or license.txt.
+ * If not, write to the Free Software Foundation Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA  02111-1307 USA
+ */
+package org.mycore.lookup.api.resource;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.mycore.lookup.api.service.LookupService;
+import org.mycore.lookup.backend.index.IndexManager;
+import org.mycore.lookup.util.EntityFactory;
+
+/**
+ * Exports the objects of the local index as newline delimited JSON, one object per line. The objects are
+ * streamed directly to the response while the index is read, so the whole index is never held in memory.
+ */
+@Path("export")
+public class ExportResource {
+
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    @GET
+    @Produces(APPLICATION_NDJSON)
+    public Response export(@QueryParam("type") String type, @QueryParam("gzip") @DefaultValue("false") boolean gzip) {
+        Class<?> cls = null;
+        if (type != null) {
+            try {
+                cls = LookupService.Type.valueOf(type.toUpperCase(Locale.ROOT)).value();
+            } catch (IllegalArgumentException e) {
+                return Response.status(Response.Status.BAD_REQUEST).type(MediaType.TEXT_PLAIN)
+                    .entity("Unknown type " + type + ".").build();
+            }
+        }
+
+        final Class<?> exportType = cls;
+        StreamingOutput stream = output -> {
+            long startTime = System.currentTimeMillis();
+            OutputStream out = gzip ? new GZIPOutputStream(output) : output;
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            try {
+                long count = IndexManager.instance().forEach(exportType, obj -> {
+                    try {
+                        new EntityFactory<>(obj).toJSON(writer);
+                        writer.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                LOGGER.info("Exported {} objects. ({}ms)", count, System.currentTimeMillis() - startTime);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            writer.flush();
+            if (gzip) {
+                ((GZIPOutputStream) out).finish();
+            }
+        };
+
+        ResponseBuilder response = Response.ok(stream);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.build();
+    }
+}
@@ -23,12 +23,20 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Response;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.mycore.lookup.api.event.ImportEventListener;
+import org.mycore.lookup.common.config.Configuration;
 import org.mycore.lookup.common.event.Event;
 import org.mycore.lookup.common.event.EventManager;
 
@@ -39,16 +47,46 @@ import org.mycore.lookup.common.event.EventManager;
 @Path("import")
 public class ImporterResource {
 
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final long VISIBILITY_TIMEOUT = Configuration.instance().getLong("Import.VisibilityTimeout", 300);
+
+    /**
+     * Imports the persons with given ids. By default the import runs in background, with
+     * <code>waitForVisibility</code> the response is send after the persons are searchable or
+     * with status <code>202 Accepted</code> if that takes longer than <code>Import.VisibilityTimeout</code>
+     * seconds.
+     * 
+     * @param text the whitespace separated ids
+     * @param waitForVisibility <code>true</code> to wait until the persons are searchable
+     * @return the response
+     * @throws IOException if an I/O error occurs
+     * @throws InterruptedException if interrupted while waiting
+     */
     @POST
     @Path("personsById")
-    public Response importIds(String text) throws IOException {
+    public Response importIds(String text,
+        @QueryParam("waitForVisibility") @DefaultValue("false") boolean waitForVisibility)
+        throws IOException, InterruptedException {
         StringTokenizer st = new StringTokenizer(text);
         List<String> ids = new ArrayList<>();
         while (st.hasMoreTokens()) {
             ids.add(st.nextToken());
         }
 
-        EventManager.instance().fireAsyncEvent(new Event<List<String>>(ImportEventListener.EVENT_IMPORT_PERSONS, ids));
+        if (waitForVisibility) {
+            try {
+                ImportEventListener.importPersons(ids).get(VISIBILITY_TIMEOUT, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                return Response.accepted().build();
+            } catch (ExecutionException e) {
+                LOGGER.error(e.getMessage(), e);
+                return Response.serverError().build();
+            }
+        } else {
+            EventManager.instance()
+                .fireAsyncEvent(new Event<List<String>>(ImportEventListener.EVENT_IMPORT_PERSONS, ids));
+        }
 
         return Response.ok().build();
     }
@@ -0,0 +1,65 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See http://www.mycore.de/ for details.
+ *
+ * This program is free software; you can use it, redistribute it
+ * and / or modify it under the terms of the GNU General Public License
+ * (GPL) as published by the Free Software Foundation; either version 2
+ * of the License or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program, in a file called gpl.txt or license.txt.
+ * If not, write to the Free Software Foundation Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA  02111-1307 USA
+ */
+package org.mycore.lookup.api.resource;
+
+import java.io.IOException;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import org.mycore.lookup.backend.index.IndexManager;
+
+/**
+ * Administrative resource of the local Lucene index.
+ */
+@Path("admin/index")
+public class IndexResource {
+
+    @GET
+    @Path("stats")
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonObject stats() {
+        JsonObjectBuilder stats = Json.createObjectBuilder();
+        IndexManager.instance().getStats().forEach((name, value) -> {
+            if (value instanceof Double) {
+                stats.add(name, value.doubleValue());
+            } else {
+                stats.add(name, value.longValue());
+            }
+        });
+        return stats.build();
+    }
+
+    @POST
+    @Path("snapshot")
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonObject snapshot() throws IOException {
+        long startTime = System.currentTimeMillis();
+        java.nio.file.Path target = IndexManager.instance().backup();
+        return Json.createObjectBuilder().add("path", target.toString())
+            .add("timeMs", System.currentTimeMillis() - startTime).build();
+    }
+}
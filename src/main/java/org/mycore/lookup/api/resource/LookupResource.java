@@ -19,21 +19,29 @@
  */
 package org.mycore.lookup.api.resource;
 
+import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.CacheControl;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 
 import org.mycore.lookup.api.entity.Corporate;
+import org.mycore.lookup.api.entity.MappedIdentifiers;
 import org.mycore.lookup.api.entity.Person;
 import org.mycore.lookup.api.entity.Place;
 import org.mycore.lookup.api.entity.wrapper.CorporateListWrapper;
 import org.mycore.lookup.api.entity.wrapper.PersonListWrapper;
 import org.mycore.lookup.api.entity.wrapper.PlaceListWrapper;
 import org.mycore.lookup.api.service.LookupService;
+import org.mycore.lookup.backend.index.IndexManager;
+import org.mycore.lookup.common.config.Configuration;
 import org.mycore.lookup.frontend.annotation.CacheMaxAge;
 
 /**
@@ -43,12 +51,30 @@ import org.mycore.lookup.frontend.annotation.CacheMaxAge;
 @Path("lookup")
 public class LookupResource {
 
+    private static final int DEFAULT_LIMIT = 10;
+
+    private static final int MAX_LIMIT = 1000;
+
+    // the cursors of a page are valid at least that long
+    private static final int PAGE_MAX_AGE = (int) Configuration.instance().getDouble("Index.CursorMaxAgeSec", 600);
+
     @GET
     @CacheMaxAge(time = 1, unit = TimeUnit.HOURS)
     @Path("corporates/{term}")
     @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
-    public CorporateListWrapper corporates(@PathParam("term") String term) {
-        return new CorporateListWrapper().setCorporates(LookupService.suggest(LookupService.Type.CORPORATE, term));
+    public Response corporates(@PathParam("term") String term, @QueryParam("mode") String mode,
+        @QueryParam("from") Integer from, @QueryParam("to") Integer to, @QueryParam("sort") String sort,
+        @QueryParam("offset") Integer offset, @QueryParam("cursor") String cursor,
+        @QueryParam("limit") Integer limit) {
+        if (mode == null && from == null && to == null && sort == null && offset == null && cursor == null
+            && limit == null) {
+            return Response.ok(new CorporateListWrapper().setCorporates(
+                LookupService.suggest(LookupService.Type.CORPORATE, term))).build();
+        }
+        IndexManager.Page<Corporate> page = suggest(LookupService.Type.CORPORATE, term, mode, from, to, sort, offset,
+            cursor, limit);
+        return paged(new CorporateListWrapper().setCorporates(page.getHits()).setTotalHits(page.getTotalHits())
+            .setCursor(page.getCursor()));
     }
 
     @GET
@@ -63,8 +89,19 @@ public class LookupResource {
     @CacheMaxAge(time = 1, unit = TimeUnit.HOURS)
     @Path("persons/{term}")
     @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
-    public PersonListWrapper persons(@PathParam("term") String term) {
-        return new PersonListWrapper().setPersons(LookupService.suggest(LookupService.Type.PERSON, term));
+    public Response persons(@PathParam("term") String term, @QueryParam("mode") String mode,
+        @QueryParam("from") Integer from, @QueryParam("to") Integer to, @QueryParam("sort") String sort,
+        @QueryParam("offset") Integer offset, @QueryParam("cursor") String cursor,
+        @QueryParam("limit") Integer limit) {
+        if (mode == null && from == null && to == null && sort == null && offset == null && cursor == null
+            && limit == null) {
+            return Response.ok(new PersonListWrapper().setPersons(
+                LookupService.suggest(LookupService.Type.PERSON, term))).build();
+        }
+        IndexManager.Page<Person> page = suggest(LookupService.Type.PERSON, term, mode, from, to, sort, offset,
+            cursor, limit);
+        return paged(new PersonListWrapper().setPersons(page.getHits()).setTotalHits(page.getTotalHits())
+            .setCursor(page.getCursor()));
     }
 
     @GET
@@ -79,8 +116,17 @@ public class LookupResource {
     @CacheMaxAge(time = 1, unit = TimeUnit.HOURS)
     @Path("places/{term}")
     @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
-    public PlaceListWrapper places(@PathParam("term") String term) {
-        return new PlaceListWrapper().setPlaces(LookupService.suggest(LookupService.Type.PLACE, term));
+    public Response places(@PathParam("term") String term, @QueryParam("mode") String mode,
+        @QueryParam("offset") Integer offset, @QueryParam("cursor") String cursor,
+        @QueryParam("limit") Integer limit) {
+        if (mode == null && offset == null && cursor == null && limit == null) {
+            return Response.ok(new PlaceListWrapper().setPlaces(
+                LookupService.suggest(LookupService.Type.PLACE, term))).build();
+        }
+        IndexManager.Page<Place> page = suggest(LookupService.Type.PLACE, term, mode, null, null, null, offset,
+            cursor, limit);
+        return paged(new PlaceListWrapper().setPlaces(page.getHits()).setTotalHits(page.getTotalHits())
+            .setCursor(page.getCursor()));
     }
 
     @GET
@@ -90,4 +136,38 @@ public class LookupResource {
     public Place place(@PathParam("id") String id) {
         return LookupService.lookup(LookupService.Type.PLACE, id);
     }
+
+    /**
+     * Builds the response of a page, which is cached only as long as its cursor is valid.
+     */
+    private static Response paged(Object entity) {
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setMaxAge(PAGE_MAX_AGE);
+        return Response.ok(entity).cacheControl(cacheControl).build();
+    }
+
+    private static <V extends MappedIdentifiers<V>> IndexManager.Page<V> suggest(LookupService.Type type,
+        String term, String mode, Integer from, Integer to, String sort, Integer offset, String cursor,
+        Integer limit) {
+        int numHits = Optional.ofNullable(limit).orElse(DEFAULT_LIMIT);
+        int start = Optional.ofNullable(offset).orElse(0);
+        if (numHits < 1 || numHits > MAX_LIMIT || start < 0) {
+            throw new BadRequestException("Invalid offset or limit.");
+        }
+        if (cursor != null && offset != null) {
+            throw new BadRequestException("Either cursor or offset can be given.");
+        }
+        if (from != null && to != null && from > to) {
+            throw new BadRequestException("Invalid year range.");
+        }
+        try {
+            LookupService.Order order = sort != null ? LookupService.Order.fromValue(sort)
+                : LookupService.Order.RELEVANCE;
+            LookupService.Mode matchMode = mode != null ? LookupService.Mode.fromValue(mode)
+                : LookupService.Mode.DEFAULT;
+            return LookupService.suggest(type, term, matchMode, from, to, order, cursor, start, numHits);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage(), e);
+        }
+    }
 }
@@ -19,15 +19,22 @@
  */
 package org.mycore.lookup.api.service;
 
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 import javax.annotation.Priority;
 
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
+import org.apache.lucene.document.IntPoint;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.queryparser.classic.ParseException;
-import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
 import org.mycore.lookup.api.entity.Corporate;
 import org.mycore.lookup.api.entity.IdType;
@@ -36,6 +43,8 @@ import org.mycore.lookup.api.entity.Place;
 import org.mycore.lookup.api.entity.Scheme;
 import org.mycore.lookup.api.service.annotation.Service;
 import org.mycore.lookup.backend.index.IndexManager;
+import org.mycore.lookup.backend.index.codec.DocumentCodec;
+import org.mycore.lookup.common.config.Configuration;
 
 /**
  * @author Ren\u00E9 Adler (eagle)
@@ -45,13 +54,124 @@ import org.mycore.lookup.backend.index.IndexManager;
 @Priority(50)
 public class IndexLookupService extends LookupService {
 
-    private static final Logger LOGGER = LogManager.getLogger();
+    private static final Configuration CONFIG = Configuration.instance();
 
-    private final IndexManager idx;
+    private static final Map<Type, Map<String, Float>> SUGGEST_FIELDS = new EnumMap<>(Type.class);
+
+    private static final Map<Type, List<String>> FUZZY_FIELDS = new EnumMap<>(Type.class);
+
+    static {
+        suggestField(Type.CORPORATE, "Corporate.name", 2f);
+        suggestField(Type.CORPORATE, "Corporate.alternateNames", 1.5f);
+        suggestField(Type.CORPORATE, "Corporate.description", 1f);
+        suggestField(Type.PERSON, "Person.displayName", 2f);
+        suggestField(Type.PERSON, "Person.alternateNames", 1.5f);
+        suggestField(Type.PERSON, "Person.description", 1f);
+        suggestField(Type.PLACE, "Place.name", 2f);
+        suggestField(Type.PLACE, "Place.alternateNames", 1.5f);
+        suggestField(Type.PLACE, "Place.description", 1f);
+
+        FUZZY_FIELDS.put(Type.CORPORATE, Arrays.asList("Corporate.name", "Corporate.alternateNames"));
+        FUZZY_FIELDS.put(Type.PERSON, Arrays.asList("Person.familyName", "Person.givenName", "Person.alternateNames"));
+        FUZZY_FIELDS.put(Type.PLACE, Arrays.asList("Place.name", "Place.alternateNames"));
+    }
+
+    private final SuggestQueryBuilder queryBuilder;
 
     public IndexLookupService() {
         supportedSchemes = Scheme.getAll();
-        idx = IndexManager.instance();
+        queryBuilder = new SuggestQueryBuilder(IndexManager.instance().getAnalyzer(),
+            CONFIG.getInt("Index.TokenCacheSize", 10000));
+    }
+
+    private static void suggestField(Type type, String field, float boost) {
+        SUGGEST_FIELDS.computeIfAbsent(type, t -> new LinkedHashMap<>()).put(field, boost);
+    }
+
+    /**
+     * Returns a page of the suggestions of the index. The year range is executed as point range query on the
+     * year of birth or establishment. In {@link Mode#PHONETIC} the names are also matched by their phonetic codes,
+     * and if that finds nothing, by a fuzzy query with at most <code>Index.FuzzyMaxExpansions</code> expanded
+     * terms.
+     * 
+     * @param type the type
+     * @param term the search term
+     * @param mode the match mode, or <code>null</code> for {@link Mode#DEFAULT}
+     * @param fromYear the minimum year of birth or establishment, or <code>null</code>
+     * @param toYear the maximum year of birth or establishment, or <code>null</code>
+     * @param order the sort order, or <code>null</code> to sort by relevance
+     * @param cursor the cursor of the previous page, or <code>null</code>
+     * @param offset the number of hits to skip, if no cursor is given
+     * @param limit the maximum number of hits
+     * @return the page
+     */
+    @SuppressWarnings("unchecked")
+    public <V> IndexManager.Page<V> suggestPage(Type type, String term, Mode mode, Integer fromYear, Integer toYear,
+        Order order, String cursor, int offset, int limit) {
+        Class<V> cls = (Class<V>) type.value();
+        Query query = suggestQuery(type, term);
+        if (mode == Mode.PHONETIC) {
+            query = new BooleanQuery.Builder().add(query, Occur.SHOULD)
+                .add(IndexManager.instance().phoneticQuery(cls, term), Occur.SHOULD).build();
+        }
+        Sort sort = null;
+        Query range = null;
+        if (fromYear != null || toYear != null || order != null && order != Order.RELEVANCE) {
+            String yearField = yearField(type);
+            if (fromYear != null || toYear != null) {
+                range = IntPoint.newRangeQuery(yearField, Optional.ofNullable(fromYear).orElse(Integer.MIN_VALUE),
+                    Optional.ofNullable(toYear).orElse(Integer.MAX_VALUE));
+            }
+            if (order != null && order != Order.RELEVANCE) {
+                sort = yearSort(yearField, order == Order.YEAR_DESC);
+            }
+        }
+
+        IndexManager.Page<V> page = search(cls, filter(query, range), sort, cursor, offset, limit);
+        if (mode == Mode.PHONETIC && page.getTotalHits() == 0) {
+            page = search(cls, filter(fuzzyQuery(type, term), range), sort, cursor, offset, limit);
+        }
+        return page;
+    }
+
+    private <V> IndexManager.Page<V> search(Class<V> cls, Query query, Sort sort, String cursor, int offset,
+        int limit) {
+        return cursor != null ? IndexManager.instance().search(cls, query, sort, cursor, limit)
+            : IndexManager.instance().search(cls, query, sort, offset, limit);
+    }
+
+    private static Query filter(Query query, Query filter) {
+        return filter != null ? new BooleanQuery.Builder().add(query, Occur.MUST).add(filter, Occur.FILTER).build()
+            : query;
+    }
+
+    private static String yearField(Type type) {
+        switch (type) {
+            case CORPORATE:
+                return "Corporate.dateOfEstablishment" + DocumentCodec.YEAR_FIELD_SUFFIX;
+            case PERSON:
+                return "Person.dateOfBirth" + DocumentCodec.YEAR_FIELD_SUFFIX;
+            default:
+                throw new IllegalArgumentException("Year range and order aren't supported for " + type + ".");
+        }
+    }
+
+    private static Sort yearSort(String yearField, boolean reverse) {
+        SortField sortField = new SortField(yearField, SortField.Type.INT, reverse);
+        // hits without year last
+        sortField.setMissingValue(reverse ? Integer.MIN_VALUE : Integer.MAX_VALUE);
+        return new Sort(sortField, SortField.FIELD_SCORE);
+    }
+
+    private Query fuzzyQuery(Type type, String term) {
+        return queryBuilder.fuzzy(FUZZY_FIELDS.get(type), term, CONFIG.getInt("Index.FuzzyMaxExpansions", 200),
+            CONFIG.getInt("Index.FuzzyPrefixLength", 1));
+    }
+
+    private Query suggestQuery(Type type, String term) {
+        // the completion query matches incomplete names while typing
+        return new BooleanQuery.Builder().add(queryBuilder.build(SUGGEST_FIELDS.get(type), term), Occur.SHOULD)
+            .add(IndexManager.instance().completionQuery(type.value(), term), Occur.SHOULD).build();
     }
 
     /* (non-Javadoc)
@@ -59,14 +179,7 @@ public class IndexLookupService extends LookupService {
      */
     @Override
     public List<Corporate> suggestCorporate(String term) throws UnsupportedOperationException {
-        try {
-            String query = "Corporate.alternateNames:" + term + " OR Corporate.description:" + term
-                + " OR Corporate.name:" + term;
-            return idx.get(new QueryParser("Corporate.name", idx.getAnalyzer()).parse(query));
-        } catch (ParseException e) {
-            LOGGER.error(e.getMessage(), e);
-        }
-        return null;
+        return IndexManager.instance().get(Corporate.class, suggestQuery(Type.CORPORATE, term));
     }
 
     /* (non-Javadoc)
@@ -74,14 +187,7 @@ public class IndexLookupService extends LookupService {
      */
     @Override
     public List<Person> suggestPerson(String term) throws UnsupportedOperationException {
-        try {
-            String query = "Person.alternateNames:" + term + " OR Person.description:" + term
-                + " OR Person.displayName:" + term;
-            return idx.get(new QueryParser("Person.alternateNames", idx.getAnalyzer()).parse(query));
-        } catch (ParseException e) {
-            LOGGER.error(e.getMessage(), e);
-        }
-        return null;
+        return IndexManager.instance().get(Person.class, suggestQuery(Type.PERSON, term));
     }
 
     /* (non-Javadoc)
@@ -89,13 +195,7 @@ public class IndexLookupService extends LookupService {
      */
     @Override
     public List<Place> suggestPlace(String term) throws UnsupportedOperationException {
-        try {
-            String query = "Place.name:" + term + " OR Place.alternateNames:" + term + " OR Place.description:" + term;
-            return idx.get(new QueryParser("Place.name", idx.getAnalyzer()).parse(query));
-        } catch (ParseException e) {
-            LOGGER.error(e.getMessage(), e);
-        }
-        return null;
+        return IndexManager.instance().get(Place.class, suggestQuery(Type.PLACE, term));
     }
 
     /* (non-Javadoc)
@@ -103,8 +203,9 @@ public class IndexLookupService extends LookupService {
      */
     @Override
     public Corporate corporate(IdType idType) throws UnsupportedOperationException {
-        return (Corporate) idx.get(new TermQuery(new Term("Corporate.mappedIds", idType.toString())), 1)
-            .stream().findFirst().orElse(null);
+        return IndexManager.instance()
+            .get(Corporate.class, new TermQuery(new Term("Corporate.mappedIds", idType.toString())), 1).stream()
+            .findFirst().orElse(null);
     }
 
     /* (non-Javadoc)
@@ -112,8 +213,9 @@ public class IndexLookupService extends LookupService {
      */
     @Override
     public Person person(IdType idType) throws UnsupportedOperationException {
-        return (Person) idx.get(new TermQuery(new Term("Person.mappedIds", idType.toString())), 1).stream().findFirst()
-            .orElse(null);
+        return IndexManager.instance()
+            .get(Person.class, new TermQuery(new Term("Person.mappedIds", idType.toString())), 1).stream()
+            .findFirst().orElse(null);
     }
 
     /* (non-Javadoc)
@@ -121,8 +223,9 @@ public class IndexLookupService extends LookupService {
      */
     @Override
     public Place place(IdType idType) throws UnsupportedOperationException {
-        return (Place) idx.get(new TermQuery(new Term("Place.mappedIds", idType.toString())), 1)
-            .stream().findFirst().orElse(null);
+        return IndexManager.instance()
+            .get(Place.class, new TermQuery(new Term("Place.mappedIds", idType.toString())), 1).stream()
+            .findFirst().orElse(null);
     }
 
 }
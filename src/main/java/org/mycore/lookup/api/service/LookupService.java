@@ -43,6 +43,7 @@ import org.mycore.lookup.api.entity.Place;
 import org.mycore.lookup.api.entity.Scheme;
 import org.mycore.lookup.api.event.LookupEventListener;
 import org.mycore.lookup.api.service.annotation.Service;
+import org.mycore.lookup.backend.index.IndexManager;
 import org.mycore.lookup.common.event.Event;
 import org.mycore.lookup.common.event.EventManager;
 import org.reflections.Reflections;
@@ -117,6 +118,31 @@ public abstract class LookupService {
         return objs;
     }
 
+    /**
+     * Returns a page of suggestions from the local index. Other than {@link #suggest(Type, String)}, the remote
+     * services aren't queried, so that deep pages can be fetched with a cursor.
+     * 
+     * @param type the type
+     * @param term the search term
+     * @param mode the match mode
+     * @param fromYear the minimum year of birth or establishment, or <code>null</code>
+     * @param toYear the maximum year of birth or establishment, or <code>null</code>
+     * @param order the sort order
+     * @param cursor the cursor of the previous page, or <code>null</code>
+     * @param offset the number of hits to skip, if no cursor is given
+     * @param limit the maximum number of hits
+     * @return the page
+     * @throws IllegalArgumentException if the term, mode, year range, order or cursor is invalid
+     */
+    public static <V extends MappedIdentifiers<V>> IndexManager.Page<V> suggest(final Type type, final String term,
+        final Mode mode, final Integer fromYear, final Integer toYear, final Order order, final String cursor,
+        final int offset, final int limit) {
+        return SERVICES.stream().filter(IndexLookupService.class::isInstance).map(IndexLookupService.class::cast)
+            .findFirst()
+            .map(svc -> svc.<V> suggestPage(type, term, mode, fromYear, toYear, order, cursor, offset, limit))
+            .orElseThrow(() -> new UnsupportedOperationException("No index lookup service registered."));
+    }
+
     @SuppressWarnings("unchecked")
     public static <V extends MappedIdentifiers<V>> V lookup(final Type type, final String id) {
         return Optional.ofNullable(IdType.parse(id)).map(idType -> (V) lookup(type, idType)).orElse(null);
@@ -236,4 +262,56 @@ public abstract class LookupService {
             throw new IllegalArgumentException(value.getName());
         }
     }
+
+    public static enum Mode {
+        DEFAULT("default"),
+
+        PHONETIC("phonetic");
+
+        private final String value;
+
+        Mode(final String value) {
+            this.value = value;
+        }
+
+        public String value() {
+            return value;
+        }
+
+        public static Mode fromValue(final String value) {
+            for (Mode m : Mode.values()) {
+                if (m.value.equals(value)) {
+                    return m;
+                }
+            }
+            throw new IllegalArgumentException("Invalid mode " + value + ".");
+        }
+    }
+
+    public static enum Order {
+        RELEVANCE("relevance"),
+
+        YEAR("year"),
+
+        YEAR_DESC("-year");
+
+        private final String value;
+
+        Order(final String value) {
+            this.value = value;
+        }
+
+        public String value() {
+            return value;
+        }
+
+        public static Order fromValue(final String value) {
+            for (Order o : Order.values()) {
+                if (o.value.equals(value)) {
+                    return o;
+                }
+            }
+            throw new IllegalArgumentException("Invalid sort order " + value + ".");
+        }
+    }
 }
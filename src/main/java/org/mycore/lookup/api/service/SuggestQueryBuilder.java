@@ -0,0 +1,148 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See http://www.mycore.de/ for details.
+ *
+ * This program is free software; you can use it, redistribute it
+ * and / or modify it under the terms of the GNU General Public License
+ * (GPL) as published by the Free Software Foundation; either version 2
+ * of the License or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program, in a file called gpl.txt or license.txt.
+ * If not, write to the Free Software Foundation Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA  02111-1307 USA
+ */
+package org.mycore.lookup.api.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.DisjunctionMaxQuery;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Builds the suggest queries of the {@link IndexLookupService} directly from the analyzed tokens of the term,
+ * instead of concatenating a query string for the {@link org.apache.lucene.queryparser.classic.QueryParser}. So
+ * the term needs no escaping, and the tokens of recurring terms are taken from a cache.
+ * <p>
+ * The tokens are analyzed once per term and not per field, so the analyzer has to analyze all suggest fields
+ * the same way, like the {@link org.apache.lucene.analysis.standard.StandardAnalyzer} does.
+ * </p>
+ */
+class SuggestQueryBuilder {
+
+    private static final float TIE_BREAKER = 0.1f;
+
+    private final Analyzer analyzer;
+
+    private final Cache<String, List<String>> tokenCache;
+
+    /**
+     * @param analyzer the analyzer of the suggest fields
+     * @param cacheSize the maximum number of cached terms
+     */
+    SuggestQueryBuilder(Analyzer analyzer, int cacheSize) {
+        this.analyzer = analyzer;
+        this.tokenCache = CacheBuilder.newBuilder().maximumSize(cacheSize).build();
+    }
+
+    /**
+     * Returns the analyzed tokens of given term.
+     * 
+     * @param term the term
+     * @return the tokens
+     */
+    List<String> tokens(String term) {
+        try {
+            return tokenCache.get(term, () -> analyze(term));
+        } catch (ExecutionException e) {
+            throw new UncheckedIOException((IOException) e.getCause());
+        }
+    }
+
+    private List<String> analyze(String term) throws IOException {
+        List<String> tokens = new ArrayList<>();
+        try (TokenStream ts = analyzer.tokenStream("", term)) {
+            CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+            ts.reset();
+            while (ts.incrementToken()) {
+                tokens.add(termAtt.toString());
+            }
+            ts.end();
+        }
+        return Collections.unmodifiableList(tokens);
+    }
+
+    /**
+     * Builds the query matching any token of the term in any of the weighted fields. A token scores by its best
+     * field, the other fields only break ties.
+     * 
+     * @param fields the fields and their boosts
+     * @param term the term
+     * @return the query
+     */
+    Query build(Map<String, Float> fields, String term) {
+        List<String> tokens = tokens(term);
+        if (tokens.isEmpty()) {
+            return new MatchNoDocsQuery("No tokens in " + term + ".");
+        }
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        tokens.forEach(token -> {
+            List<Query> fieldQueries = new ArrayList<>(fields.size());
+            fields.forEach((field, boost) -> fieldQueries.add(new BoostQuery(new TermQuery(new Term(field, token)),
+                boost)));
+            builder.add(new DisjunctionMaxQuery(fieldQueries, TIE_BREAKER), Occur.SHOULD);
+        });
+        return builder.build();
+    }
+
+    /**
+     * Builds the query matching all tokens of the term with a few edits in any of the fields. The expansion
+     * budget is shared by the fuzzy queries of all tokens and fields.
+     * 
+     * @param fields the fields
+     * @param term the term
+     * @param maxExpansions the maximum number of expanded terms
+     * @param prefixLength the length of the prefix that has to match exactly
+     * @return the query
+     */
+    Query fuzzy(List<String> fields, String term, int maxExpansions, int prefixLength) {
+        List<String> tokens = tokens(term);
+        if (tokens.isEmpty()) {
+            return new MatchNoDocsQuery("No tokens in " + term + ".");
+        }
+        int expansions = Math.max(1, maxExpansions / (tokens.size() * fields.size()));
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        tokens.forEach(token -> {
+            int maxEdits = token.length() < 3 ? 0 : token.length() < 6 ? 1 : 2;
+            BooleanQuery.Builder tokenBuilder = new BooleanQuery.Builder();
+            fields.forEach(field -> tokenBuilder
+                .add(new FuzzyQuery(new Term(field, token), maxEdits, prefixLength, expansions, true), Occur.SHOULD));
+            builder.add(tokenBuilder.build(), Occur.MUST);
+        });
+        return builder.build();
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See http://www.mycore.de/ for details.
+ *
+ * This program is free software; you can use it, redistribute it
+ * and / or modify it under the terms of the GNU General Public License
+ * (GPL) as published by the Free Software Foundation; either version 2
+ * of the License or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program, in a file called gpl.txt or license.txt.
+ * If not, write to the Free Software Foundation Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA  02111-1307 USA
+ */
+package org.mycore.lookup.backend.index;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.DelegatingAnalyzerWrapper;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.miscellaneous.ASCIIFoldingFilter;
+import org.apache.lucene.analysis.ngram.EdgeNGramTokenFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.mycore.lookup.backend.index.codec.DocumentCodec;
+
+/**
+ * Analyzes the prefix completion fields of the entities, see
+ * {@link org.mycore.lookup.backend.index.annotation.Field#complete()}. On indexing every token is split into its
+ * edge n-grams, so that a prefix typed by the user is matched by a plain {@link TermQuery} on the completion
+ * field instead of expanding a prefix over the term dictionary.
+ */
+class CompletionAnalyzer extends Analyzer {
+
+    private final int minGram;
+
+    private final int maxGram;
+
+    private final Analyzer queryAnalyzer = new Analyzer() {
+        @Override
+        protected TokenStreamComponents createComponents(String fieldName) {
+            Tokenizer source = new StandardTokenizer();
+            return new TokenStreamComponents(source, normalize(fieldName, source));
+        }
+
+        @Override
+        protected TokenStream normalize(String fieldName, TokenStream in) {
+            return CompletionAnalyzer.this.normalize(fieldName, in);
+        }
+    };
+
+    /**
+     * @param minGram the minimum prefix length
+     * @param maxGram the maximum prefix length, longer prefixes are truncated
+     */
+    CompletionAnalyzer(int minGram, int maxGram) {
+        this.minGram = minGram;
+        this.maxGram = maxGram;
+    }
+
+    /**
+     * Returns an analyzer using this analyzer for the completion fields and given analyzer for all other fields.
+     * 
+     * @param analyzer the analyzer of the other fields
+     * @return the wrapped analyzer
+     */
+    Analyzer wrap(Analyzer analyzer) {
+        return new DelegatingAnalyzerWrapper(PER_FIELD_REUSE_STRATEGY) {
+            @Override
+            protected Analyzer getWrappedAnalyzer(String fieldName) {
+                return fieldName.endsWith(DocumentCodec.COMPLETION_FIELD_SUFFIX) ? CompletionAnalyzer.this
+                    : analyzer;
+            }
+        };
+    }
+
+    /**
+     * Builds the query matching all entities with a completion token starting with each of the tokens of the
+     * term. Tokens shorter than the minimum prefix length are ignored.
+     * 
+     * @param field the completion field
+     * @param term the typed term
+     * @return the query
+     */
+    Query query(String field, String term) {
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        int clauses = 0;
+        try (TokenStream ts = queryAnalyzer.tokenStream(field, term)) {
+            CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+            ts.reset();
+            while (ts.incrementToken()) {
+                if (termAtt.length() >= minGram) {
+                    String prefix = termAtt.subSequence(0, Math.min(termAtt.length(), maxGram)).toString();
+                    builder.add(new TermQuery(new Term(field, prefix)), Occur.MUST);
+                    clauses++;
+                }
+            }
+            ts.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return clauses > 0 ? builder.build() : new MatchNoDocsQuery("No completion prefix in " + term + ".");
+    }
+
+    @Override
+    protected TokenStreamComponents createComponents(String fieldName) {
+        Tokenizer source = new StandardTokenizer();
+        return new TokenStreamComponents(source,
+            new EdgeNGramTokenFilter(normalize(fieldName, source), minGram, maxGram));
+    }
+
+    @Override
+    protected TokenStream normalize(String fieldName, TokenStream in) {
+        return new ASCIIFoldingFilter(new LowerCaseFilter(in));
+    }
+
+    @Override
+    public void close() {
+        queryAnalyzer.close();
+        super.close();
+    }
+}
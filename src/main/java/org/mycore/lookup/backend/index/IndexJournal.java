@@ -0,0 +1,578 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See http://www.mycore.de/ for details.
+ *
+ * This program is free software; you can use it, redistribute it
+ * and / or modify it under the terms of the GNU General Public License
+ * (GPL) as published by the Free Software Foundation; either version 2
+ * of the License or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program, in a file called gpl.txt or license.txt.
+ * If not, write to the Free Software Foundation Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA  02111-1307 USA
+ */
+package org.mycore.lookup.backend.index;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.IndexableFieldType;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.util.BytesRef;
+import org.mycore.lookup.common.config.Configuration;
+
+/**
+ * An append-only, memory-mapped journal of {@link IndexWriteAction}s. Every action is recorded before it is
+ * queued and released after its changes are committed. The record of a failed action stays pending and is replayed
+ * after a restart, unless the action was rejected or its document is invalid. If no recorded action is pending, the
+ * journal is truncated.
+ * If the journal is full, the released records before the oldest pending record are dropped by rewriting the
+ * pending records to a new file, which atomically replaces the journal. The journal is only enlarged if the pending
+ * records need the space. The journal is forced to disk periodically, not per record. After a crash the recorded
+ * actions are replayed with {@link #replay(IndexWriteExecutor)}.
+ * <p>
+ * The journal starts with the position of the oldest pending record, the replay starts there. Each record consists
+ * of its length, a CRC32 checksum and the serialized documents with their id terms. A length of <code>0</code>
+ * marks the end of the journal.
+ */
+public class IndexJournal {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final Configuration CONFIG = Configuration.instance();
+
+    private static final int JOURNAL_HEADER_SIZE = Integer.BYTES;
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final byte VALUE_STRING = 0;
+
+    private static final byte VALUE_BYTES = 1;
+
+    private static final byte VALUE_INT = 2;
+
+    private static final byte VALUE_LONG = 3;
+
+    private static final byte VALUE_FLOAT = 4;
+
+    private static final byte VALUE_DOUBLE = 5;
+
+    private final Path path;
+
+    private final long minSize;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer buffer;
+
+    private final Deque<Record> records = new ArrayDeque<>();
+
+    private boolean dirty;
+
+    private final boolean deferRelease;
+
+    private final List<Record> completed = new ArrayList<>();
+
+    private long completedCount;
+
+    private final ScheduledExecutorService syncScheduler = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * Opens or creates the journal at given path.
+     * 
+     * @param path the journal file
+     * @throws IOException if the journal couldn't opened
+     */
+    public IndexJournal(Path path) throws IOException {
+        this(path, false);
+    }
+
+    /**
+     * Opens or creates the journal at given path. With deferred release the records of completed actions are
+     * released by {@link #release(long)} only, for indexes whose commits aren't durable.
+     * 
+     * @param path the journal file
+     * @param deferRelease <code>true</code> to keep the records of completed actions until they are released
+     * @throws IOException if the journal couldn't opened
+     */
+    public IndexJournal(Path path, boolean deferRelease) throws IOException {
+        this.path = path;
+        this.deferRelease = deferRelease;
+        minSize = CONFIG.getLong("Index.JournalSizeMB", 16) * 1024 * 1024;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        buffer = channel.map(MapMode.READ_WRITE, 0, Math.max(channel.size(), minSize));
+        buffer.position(JOURNAL_HEADER_SIZE);
+
+        long syncInterval = CONFIG.getLong("Index.JournalSyncIntervalMs", 200);
+        syncScheduler.scheduleWithFixedDelay(this::sync, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records given action. The record is released after the action is completed.
+     * 
+     * @param action the action
+     */
+    public void append(IndexWriteAction action) {
+        byte[] bytes = serialize(action);
+        Record record;
+        synchronized (this) {
+            ensureCapacity(HEADER_SIZE + bytes.length + Integer.BYTES);
+            record = new Record(buffer.position());
+            write(bytes);
+            records.add(record);
+            dirty = true;
+        }
+        action.completion().whenComplete((v, e) -> complete(record, e));
+    }
+
+    /**
+     * Returns the recorded actions of a previous run. The actions are pending until they are
+     * completed, new records are appended after them.
+     * 
+     * @param executor the executor of the actions
+     * @return the recorded actions
+     */
+    public synchronized List<IndexWriteAction> replay(IndexWriteExecutor executor) {
+        List<IndexWriteAction> actions = new ArrayList<>();
+        List<Record> replayed = new ArrayList<>();
+        buffer.position(Math.max(buffer.getInt(0), JOURNAL_HEADER_SIZE));
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                buffer.position(start);
+                break;
+            }
+            byte[] record = new byte[length];
+            buffer.get(record);
+            if (checksum(record) != checksum) {
+                LOGGER.warn("Journal {} is corrupt at position {}, ignore following records.", path, start);
+                buffer.position(start);
+                break;
+            }
+            actions.add(deserialize(executor, record));
+            replayed.add(new Record(start));
+        }
+        if (buffer.remaining() >= Integer.BYTES) {
+            buffer.putInt(buffer.position(), 0);
+        }
+
+        records.addAll(replayed);
+        for (int i = 0; i < actions.size(); i++) {
+            Record record = replayed.get(i);
+            actions.get(i).completion().whenComplete((v, e) -> complete(record, e));
+        }
+        if (records.isEmpty()) {
+            truncate();
+        }
+        return actions;
+    }
+
+    /**
+     * Forces the recorded actions to disk.
+     */
+    public void sync() {
+        MappedByteBuffer dirtyBuffer;
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            dirtyBuffer = buffer;
+        }
+        dirtyBuffer.force();
+    }
+
+    /**
+     * Forces the journal to disk and closes it.
+     */
+    public void close() {
+        syncScheduler.shutdown();
+        try {
+            syncScheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            LOGGER.warn("Error while closing journal sync.", e);
+        }
+        synchronized (this) {
+            if (records.isEmpty()) {
+                truncate();
+            }
+            sync();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.warn("Error while closing journal.", e);
+            }
+        }
+    }
+
+    /**
+     * Returns a checkpoint covering the records of all actions completed so far.
+     * 
+     * @return the checkpoint
+     * @see #release(long)
+     */
+    public synchronized long checkpoint() {
+        return completedCount;
+    }
+
+    /**
+     * Releases the records of the actions completed up to given checkpoint, after their changes are durable.
+     * 
+     * @param checkpoint the checkpoint returned by {@link #checkpoint()}
+     */
+    public synchronized void release(long checkpoint) {
+        List<Record> durable = new ArrayList<>();
+        completed.removeIf(r -> r.completion <= checkpoint && durable.add(r));
+        durable.forEach(this::release);
+    }
+
+    private synchronized void complete(Record record, Throwable e) {
+        if (e != null && !isDropped(e)) {
+            // the changes may not be committed, e.g. on a full disk
+            LOGGER.debug("Keep journal record of failed action for replay.", e);
+            return;
+        }
+        if (deferRelease) {
+            record.completion = ++completedCount;
+            completed.add(record);
+        } else {
+            release(record);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the action was dropped on purpose, a replay wouldn't change that.
+     */
+    private static boolean isDropped(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return cause instanceof RejectedExecutionException || cause instanceof IllegalArgumentException;
+    }
+
+    private void release(Record record) {
+        record.released = true;
+        while (!records.isEmpty() && records.peek().released) {
+            records.poll();
+        }
+        if (records.isEmpty()) {
+            truncate();
+        } else {
+            buffer.putInt(0, records.peek().start);
+            dirty = true;
+        }
+    }
+
+    private void truncate() {
+        buffer.putInt(0, JOURNAL_HEADER_SIZE);
+        buffer.position(JOURNAL_HEADER_SIZE);
+        buffer.putInt(JOURNAL_HEADER_SIZE, 0);
+        dirty = true;
+    }
+
+    private void write(byte[] record) {
+        buffer.putInt(record.length);
+        buffer.putInt(checksum(record));
+        buffer.put(record);
+        // marks the end, old records behind are ignored
+        buffer.putInt(buffer.position(), 0);
+    }
+
+    private void ensureCapacity(int length) {
+        if (buffer.remaining() >= length) {
+            return;
+        }
+        int start = records.isEmpty() ? buffer.position() : records.peek().start;
+        int pendingLength = buffer.position() - start;
+        long size = minSize;
+        // keeps the pending records below the half, so that the journal isn't rewritten on every append
+        while (size - JOURNAL_HEADER_SIZE - pendingLength < length || pendingLength > size / 2) {
+            size *= 2;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new UncheckedIOException(
+                new IOException("Pending records of journal " + path + " exceed the maximum journal size."));
+        }
+        try {
+            if (start > JOURNAL_HEADER_SIZE) {
+                rewrite(start, size);
+            } else {
+                buffer.force();
+                buffer = channel.map(MapMode.READ_WRITE, 0, size);
+                buffer.position(start + pendingLength);
+                LOGGER.info("Increased size of journal {} to {} bytes.", path, size);
+            }
+        } catch (IOException e) {
+            LOGGER.error(e.getMessage(), e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the pending records from given position to a new file, that replaces the journal.
+     */
+    private void rewrite(int start, long size) throws IOException {
+        int pendingLength = buffer.position() - start;
+        Path tmpPath = Paths.get(path.toString() + ".tmp");
+        try (FileChannel tmpChannel = FileChannel.open(tmpPath, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer tmpBuffer = tmpChannel.map(MapMode.READ_WRITE, 0, size);
+            ByteBuffer pendingRecords = buffer.duplicate();
+            pendingRecords.position(start).limit(start + pendingLength);
+            tmpBuffer.putInt(JOURNAL_HEADER_SIZE);
+            tmpBuffer.put(pendingRecords);
+            tmpBuffer.putInt(0);
+            tmpBuffer.force();
+        }
+        Files.move(tmpPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        channel.close();
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(MapMode.READ_WRITE, 0, size);
+        buffer.position(JOURNAL_HEADER_SIZE + pendingLength);
+        records.forEach(r -> r.start += JOURNAL_HEADER_SIZE - start);
+        LOGGER.debug("Rewrote journal {} with {} pending records and {} bytes.", path, records.size(), size);
+    }
+
+    private static int checksum(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] serialize(IndexWriteAction action) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(action.size());
+            action.forEachDocument((term, doc) -> {
+                try {
+                    writeTerm(out, term);
+                    writeDocument(out, doc);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static IndexWriteAction deserialize(IndexWriteExecutor executor, byte[] record) {
+        Map<Term, Document> updates = new LinkedHashMap<>();
+        List<Document> adds = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Term term = readTerm(in);
+                Document doc = readDocument(in);
+                if (term != null) {
+                    updates.put(term, doc);
+                } else {
+                    adds.add(doc);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return IndexWriteAction.bulkAction(executor, updates, adds);
+    }
+
+    private static void writeTerm(DataOutputStream out, Term term) throws IOException {
+        out.writeBoolean(term != null);
+        if (term != null) {
+            writeString(out, term.field());
+            writeBytes(out, term.bytes());
+        }
+    }
+
+    private static Term readTerm(DataInputStream in) throws IOException {
+        return in.readBoolean() ? new Term(readString(in), readBytes(in)) : null;
+    }
+
+    private static void writeDocument(DataOutputStream out, Document doc) throws IOException {
+        List<IndexableField> fields = doc.getFields();
+        out.writeInt(fields.size());
+        for (IndexableField field : fields) {
+            IndexableFieldType type = field.fieldType();
+            writeString(out, field.name());
+            out.writeBoolean(type.stored());
+            out.writeBoolean(type.tokenized());
+            out.writeBoolean(type.omitNorms());
+            out.writeBoolean(type.storeTermVectors());
+            out.writeBoolean(type.storeTermVectorPositions());
+            out.writeBoolean(type.storeTermVectorOffsets());
+            out.writeBoolean(type.storeTermVectorPayloads());
+            out.writeByte(type.indexOptions().ordinal());
+            out.writeByte(type.docValuesType().ordinal());
+            out.writeInt(type.pointDimensionCount());
+            out.writeInt(type.pointNumBytes());
+
+            // binary first, points decodes their numeric value from the bytes
+            Number number = field.numericValue();
+            if (field.binaryValue() != null) {
+                out.writeByte(VALUE_BYTES);
+                writeBytes(out, field.binaryValue());
+            } else if (number == null && field.stringValue() != null) {
+                out.writeByte(VALUE_STRING);
+                writeString(out, field.stringValue());
+            } else if (number instanceof Integer) {
+                out.writeByte(VALUE_INT);
+                out.writeInt(number.intValue());
+            } else if (number instanceof Long) {
+                out.writeByte(VALUE_LONG);
+                out.writeLong(number.longValue());
+            } else if (number instanceof Float) {
+                out.writeByte(VALUE_FLOAT);
+                out.writeFloat(number.floatValue());
+            } else if (number instanceof Double) {
+                out.writeByte(VALUE_DOUBLE);
+                out.writeDouble(number.doubleValue());
+            } else {
+                throw new IllegalArgumentException("Unsupported value of field " + field.name() + ".");
+            }
+        }
+    }
+
+    private static Document readDocument(DataInputStream in) throws IOException {
+        Document doc = new Document();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String name = readString(in);
+            FieldType type = new FieldType();
+            type.setStored(in.readBoolean());
+            type.setTokenized(in.readBoolean());
+            type.setOmitNorms(in.readBoolean());
+            type.setStoreTermVectors(in.readBoolean());
+            type.setStoreTermVectorPositions(in.readBoolean());
+            type.setStoreTermVectorOffsets(in.readBoolean());
+            type.setStoreTermVectorPayloads(in.readBoolean());
+            type.setIndexOptions(IndexOptions.values()[in.readByte()]);
+            type.setDocValuesType(DocValuesType.values()[in.readByte()]);
+            int dimensionCount = in.readInt();
+            int dimensionNumBytes = in.readInt();
+            if (dimensionCount > 0) {
+                type.setDimensions(dimensionCount, dimensionNumBytes);
+            }
+            type.freeze();
+
+            Object value;
+            byte valueType = in.readByte();
+            switch (valueType) {
+            case VALUE_STRING:
+                value = readString(in);
+                break;
+            case VALUE_BYTES:
+                value = readBytes(in);
+                break;
+            case VALUE_INT:
+                value = in.readInt();
+                break;
+            case VALUE_LONG:
+                value = in.readLong();
+                break;
+            case VALUE_FLOAT:
+                value = in.readFloat();
+                break;
+            case VALUE_DOUBLE:
+                value = in.readDouble();
+                break;
+            default:
+                throw new IOException("Unknown value type " + valueType + " of field " + name + ".");
+            }
+            doc.add(new JournalField(name, value, type));
+        }
+        return doc;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(DataOutputStream out, BytesRef value) throws IOException {
+        out.writeInt(value.length);
+        out.write(value.bytes, value.offset, value.length);
+    }
+
+    private static BytesRef readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new BytesRef(bytes);
+    }
+
+    /**
+     * A {@link Field} restored from the journal with its original {@link FieldType} and value.
+     */
+    private static class JournalField extends Field {
+
+        JournalField(String name, Object value, FieldType type) {
+            super(name, type);
+            fieldsData = value;
+        }
+    }
+
+    /**
+     * The position of a record, its completion order and whether it's released.
+     */
+    private static final class Record {
+
+        int start;
+
+        long completion;
+
+        boolean released;
+
+        Record(int start) {
+            this.start = start;
+        }
+    }
+}
@@ -22,59 +22,64 @@ package org.mycore.lookup.backend.index;
 import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.StopwordAnalyzerBase;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.document.DoublePoint;
-import org.apache.lucene.document.Field.Store;
-import org.apache.lucene.document.FloatPoint;
-import org.apache.lucene.document.IntPoint;
-import org.apache.lucene.document.LongPoint;
-import org.apache.lucene.document.StoredField;
-import org.apache.lucene.document.StringField;
-import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.PostingsEnum;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TermInSetQuery;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
-import org.mycore.lookup.backend.index.adapter.FieldAdapter;
-import org.mycore.lookup.backend.index.annotation.Field;
-import org.mycore.lookup.backend.index.annotation.Id;
-import org.mycore.lookup.backend.index.annotation.IdRef;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.mycore.lookup.backend.index.codec.DocumentCodec;
 import org.mycore.lookup.common.config.Configuration;
 import org.mycore.lookup.common.config.ConfigurationDir;
 import org.mycore.lookup.common.event.annotation.AutoExecutable;
 import org.mycore.lookup.common.event.annotation.Shutdown;
 import org.mycore.lookup.common.event.annotation.Startup;
-import org.mycore.lookup.util.ObjectTools;
 
 /**
  * @author Ren\u00E9 Adler (eagle)
@@ -87,25 +92,39 @@ public class IndexManager {
 
     private static final Logger LOGGER = LogManager.getLogger();
 
-    private static final Map<Class<?>, Map<Method, Field>> FIELD_CACHE = new HashMap<>();
-
-    private static final Map<Class<?>, Map<Method, IdRef>> REF_CACHE = new HashMap<>();
-
     private static final String CONFIG_PREFIX = "Index.";
 
-    private static final String OBJECT_CLASS_FIELD = "objectClass";
-
     private static final int DEFAULT_LIMIT = 10;
 
     private static IndexManager INSTANCE;
 
+    private static final String DEFAULT_SHARD = "default";
+
     private final StopwordAnalyzerBase analyzer;
 
-    private final Directory indexDir;
+    private final CompletionAnalyzer completionAnalyzer;
+
+    private final PhoneticAnalyzer phoneticAnalyzer;
+
+    private Path indexPath;
+
+    private final Map<String, IndexShard> shards = new LinkedHashMap<>();
 
-    protected IndexWriteExecutor writeExecutor;
+    private IndexShard defaultShard;
 
-    private ScheduledExecutorService optimizeScheduler;
+    private ExecutorService searchExecutor;
+
+    private final Map<IndexSearcher, List<IndexSearcher>> acquiredShardSearchers = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService maintenanceScheduler;
+
+    private ScheduledExecutorService refreshScheduler;
+
+    private ForkJoinPool documentBuilder;
+
+    private IndexWarmer warmer;
+
+    private final AtomicLong maintenanceMerges = new AtomicLong(0);
 
     @Startup
     public static IndexManager instance() {
@@ -119,42 +138,82 @@ public class IndexManager {
     public static void close() {
         if (INSTANCE != null) {
             LOGGER.info("Closing...");
-            INSTANCE.optimizeScheduler.shutdown();
-            INSTANCE.writeExecutor.shutdown();
-            long taskCount = INSTANCE.writeExecutor.getTaskCount();
+            INSTANCE.warmer.save();
+            INSTANCE.maintenanceScheduler.shutdown();
+            INSTANCE.refreshScheduler.shutdown();
+            INSTANCE.documentBuilder.shutdown();
             try {
-                while (!INSTANCE.writeExecutor.isTerminated()) {
-                    long numProcessed = INSTANCE.writeExecutor.getCompletedTaskCount();
-                    LOGGER.info("Processed {} of {} modification requests, still working...", numProcessed, taskCount);
-                    INSTANCE.writeExecutor.awaitTermination(10, TimeUnit.SECONDS);
-                }
+                INSTANCE.documentBuilder.awaitTermination(60, TimeUnit.SECONDS);
             } catch (InterruptedException e) {
-                LOGGER.warn("Error while closing", e);
+                LOGGER.warn("Error while closing document builder", e);
+            }
+            INSTANCE.shards.values().forEach(IndexShard::close);
+            if (INSTANCE.searchExecutor != null) {
+                INSTANCE.searchExecutor.shutdown();
             }
-            LOGGER.info("Processed all " + INSTANCE.writeExecutor.getCompletedTaskCount() + " modification requests.");
             INSTANCE = null;
         }
     }
 
+    /**
+     * Warms up the index before the requests are accepted, if <code>Index.Warmup</code> is enabled.
+     */
+    @Startup(priority = -100)
+    public static void warmup() {
+        if (CONFIG.getBoolean(CONFIG_PREFIX + "Warmup", true)) {
+            IndexManager idx = instance();
+            idx.warmer.warmUp(query -> idx.find(query, DEFAULT_LIMIT, new HashMap<>()));
+        }
+    }
+
+    /**
+     * Opens the index. If <code>Index.Shards</code> lists entity names, like <code>Person,Corporate,Place</code>,
+     * every entity type is stored in its own index directory below <code>Index.Path</code>, all other types in
+     * the shard <code>default</code>. Otherwise a single index is used.
+     */
     private IndexManager() {
         analyzer = CONFIG.getInstanceOf(CONFIG_PREFIX + "Analyzer", new StandardAnalyzer());
+        completionAnalyzer = new CompletionAnalyzer(CONFIG.getInt(CONFIG_PREFIX + "CompletionMinGram", 2),
+            CONFIG.getInt(CONFIG_PREFIX + "CompletionMaxGram", 15));
+        phoneticAnalyzer = new PhoneticAnalyzer();
+        Analyzer indexAnalyzer = phoneticAnalyzer.wrap(completionAnalyzer.wrap(analyzer));
         try {
             String indexPath = CONFIG.getString(CONFIG_PREFIX + "Path",
                 ConfigurationDir.getConfigurationDirectory().getAbsolutePath() + File.separator + "data"
                     + File.separator + "index");
             Path path = Paths.get(indexPath);
-            if (Files.notExists(path)) {
-                Files.createDirectories(path);
+            this.indexPath = path;
+
+            List<String> shardNames = CONFIG.getStrings(CONFIG_PREFIX + "Shards", Collections.emptyList());
+            if (shardNames.isEmpty()) {
+                defaultShard = new IndexShard(null, path, indexAnalyzer);
+            } else {
+                for (String name : shardNames) {
+                    shards.put(name, new IndexShard(name, path.resolve(name), indexAnalyzer));
+                }
+                defaultShard = shards.containsKey(DEFAULT_SHARD) ? shards.get(DEFAULT_SHARD)
+                    : new IndexShard(DEFAULT_SHARD, path.resolve(DEFAULT_SHARD), indexAnalyzer);
+
+                // searches over all shards are executed in parallel per segment
+                searchExecutor = Executors.newFixedThreadPool(
+                    CONFIG.getInt(CONFIG_PREFIX + "SearchThreads", Runtime.getRuntime().availableProcessors()));
             }
-            indexDir = FSDirectory.open(path);
+            shards.putIfAbsent(defaultShard.getName() != null ? defaultShard.getName() : DEFAULT_SHARD,
+                defaultShard);
 
-            writeExecutor = new IndexWriteExecutor(new LinkedBlockingQueue<Runnable>(), indexDir);
+            warmer = new IndexWarmer(Paths.get(indexPath + ".queries"), analyzer);
+
+            documentBuilder = new ForkJoinPool(
+                CONFIG.getInt(CONFIG_PREFIX + "BuilderThreads", Runtime.getRuntime().availableProcessors()));
+
+            long refreshInterval = CONFIG.getLong(CONFIG_PREFIX + "RefreshIntervalMs", 1000);
+            refreshScheduler = Executors.newSingleThreadScheduledExecutor();
+            refreshScheduler.scheduleWithFixedDelay(() -> shards.values().forEach(IndexShard::refresh),
+                refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
 
             int waittime = CONFIG.getInt(CONFIG_PREFIX + "OptimizeInterval", 600);
-            optimizeScheduler = Executors.newSingleThreadScheduledExecutor();
-            optimizeScheduler.scheduleAtFixedRate(
-                () -> writeExecutor.submit(IndexWriteAction.optimizeAction(writeExecutor)),
-                waittime, waittime, TimeUnit.SECONDS);
+            maintenanceScheduler = Executors.newSingleThreadScheduledExecutor();
+            maintenanceScheduler.scheduleAtFixedRate(this::maintain, waittime, waittime, TimeUnit.SECONDS);
         } catch (IOException e) {
             LOGGER.error(e.getMessage(), e);
             throw new UncheckedIOException(e);
@@ -169,371 +228,647 @@ public class IndexManager {
     }
 
     /**
-     * @return the index
+     * Returns the prefix completion query of given term for the entity type. Each token of the term must be
+     * the prefix of a token of a field marked with
+     * {@link org.mycore.lookup.backend.index.annotation.Field#complete()}.
+     * 
+     * @param type the entity type
+     * @param term the typed term
+     * @return the query
+     */
+    public Query completionQuery(Class<?> type, String term) {
+        return completionAnalyzer.query(DocumentCodec.completionField(type), term);
+    }
+
+    /**
+     * Returns the phonetic query of given term for the entity type. Each token of the term must sound like a
+     * token of a field marked with {@link org.mycore.lookup.backend.index.annotation.Field#phonetic()}.
+     * 
+     * @param type the entity type
+     * @param term the term
+     * @return the query
+     */
+    public Query phoneticQuery(Class<?> type, String term) {
+        return phoneticAnalyzer.query(DocumentCodec.phoneticField(type), term);
+    }
+
+    /**
+     * @return the index directory of the default shard
      */
     public Directory getIndexDir() {
-        return indexDir;
+        return defaultShard.getIndexDir();
+    }
+
+    /**
+     * Acquires a shared {@link IndexSearcher} over all shards. Every acquired searcher must be
+     * handed back with {@link #releaseSearcher(IndexSearcher)}.
+     * 
+     * @return the current {@link IndexSearcher}
+     * @throws IOException if the searcher couldn't acquired
+     */
+    public IndexSearcher acquireSearcher() throws IOException {
+        if (shards.size() == 1) {
+            return defaultShard.acquire();
+        }
+
+        List<IndexSearcher> shardSearchers = new ArrayList<>();
+        try {
+            for (IndexShard shard : shards.values()) {
+                shardSearchers.add(shard.acquire());
+            }
+            IndexReader[] readers = shardSearchers.stream().map(IndexSearcher::getIndexReader)
+                .toArray(IndexReader[]::new);
+            IndexSearcher searcher = new IndexSearcher(new MultiReader(readers, false), searchExecutor);
+            acquiredShardSearchers.put(searcher, shardSearchers);
+            return searcher;
+        } catch (IOException e) {
+            releaseShardSearchers(shardSearchers);
+            throw e;
+        }
     }
 
-    private Map<Method, Field> annotatedMethods(Class<?> cls) {
-        if (!FIELD_CACHE.containsKey(cls)) {
-            FIELD_CACHE.put(cls, Arrays.stream(cls.getMethods()).filter(m -> m.isAnnotationPresent(Field.class))
-                .collect(Collectors.toMap(m -> m, m -> m.getAnnotation(Field.class))));
+    /**
+     * Acquires a shared {@link IndexSearcher} of the shard storing given type.
+     * 
+     * @param type the entity type
+     * @return the current {@link IndexSearcher} of the shard
+     * @throws IOException if the searcher couldn't acquired
+     */
+    public IndexSearcher acquireSearcher(Class<?> type) throws IOException {
+        return getShard(type).acquire();
+    }
+
+    /**
+     * Releases a {@link IndexSearcher} previously acquired by {@link #acquireSearcher()}
+     * or {@link #acquireSearcher(Class)}.
+     * 
+     * @param searcher the searcher to release, may be <code>null</code>
+     */
+    public void releaseSearcher(IndexSearcher searcher) {
+        if (searcher == null) {
+            return;
         }
 
-        return FIELD_CACHE.get(cls);
+        List<IndexSearcher> shardSearchers = acquiredShardSearchers.remove(searcher);
+        if (shardSearchers == null) {
+            releaseShardSearchers(Collections.singletonList(searcher));
+            return;
+        }
+        try {
+            // decrements the references of the shard readers
+            searcher.getIndexReader().close();
+        } catch (IOException e) {
+            LOGGER.warn("Error while closing MultiReader.", e);
+        }
+        releaseShardSearchers(shardSearchers);
     }
 
-    private Map<Method, IdRef> annotatedRefs(Class<?> cls) {
-        if (!REF_CACHE.containsKey(cls)) {
-            REF_CACHE.put(cls, Arrays.stream(cls.getMethods()).filter(m -> m.isAnnotationPresent(IdRef.class))
-                .collect(Collectors.toMap(m -> m, m -> m.getAnnotation(IdRef.class))));
+    private void releaseShardSearchers(List<IndexSearcher> shardSearchers) {
+        for (IndexSearcher shardSearcher : shardSearchers) {
+            Directory dir = ((DirectoryReader) shardSearcher.getIndexReader()).directory();
+            shards.values().stream().filter(shard -> shard.getIndexDir() == dir).findFirst().ifPresent(shard -> {
+                try {
+                    shard.release(shardSearcher);
+                } catch (IOException e) {
+                    LOGGER.warn("Error while releasing IndexSearcher.", e);
+                }
+            });
         }
+    }
 
-        return REF_CACHE.get(cls);
+    private IndexShard getShard(Class<?> type) {
+        return shards.getOrDefault(type.getSimpleName(), defaultShard);
     }
 
-    @SuppressWarnings("rawtypes")
-    private FieldAdapter adapter(Field a) throws NoSuchMethodException, SecurityException,
-        InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException {
-        Class<? extends FieldAdapter> aCls = a.adapter();
-        Constructor<?> constructor = aCls.getDeclaredConstructor();
-        constructor.setAccessible(true);
-        return (FieldAdapter) constructor.newInstance();
+    /**
+     * Adds or updates an object and its references. The returned future completes after the
+     * changes are committed and the {@link IndexSearcher} is refreshed, so that they are visible
+     * to all following searches.
+     * 
+     * @param obj the object
+     * @return the completion handle of the writes
+     */
+    public <T> CompletableFuture<Void> set(T obj) {
+        List<CompletableFuture<Void>> completions = new ArrayList<>();
+        completions.add(addOrUpdate(obj));
+        buildReferences(obj).forEach(ref -> completions.add(addOrUpdate(ref)));
+        return CompletableFuture.allOf(completions.stream().toArray(CompletableFuture[]::new));
     }
 
-    public <T> void set(T obj) {
-        addOrUpdate(obj);
-        buildReferences(obj).forEach(this::addOrUpdate);
+    /**
+     * Adds or updates a list of objects and their references with a single bulk write per shard.
+     * The {@link Document}s are build in parallel and deduplicated by their id {@link Term}.
+     * 
+     * @param objs the objects
+     * @return the completion handle of the bulk writes
+     */
+    public <T> CompletableFuture<Void> set(List<T> objs) {
+        return CompletableFuture.supplyAsync(() -> buildBulkActions(objs), documentBuilder).thenCompose(actions -> {
+            actions.forEach((shard, action) -> shard.submit(action));
+            return CompletableFuture.allOf(actions.values().stream().map(IndexWriteAction::completion)
+                .toArray(CompletableFuture[]::new));
+        });
     }
 
-    public <T> void set(List<T> objs) {
-        objs.forEach(this::addOrUpdate);
+    private <T> Map<IndexShard, IndexWriteAction> buildBulkActions(List<T> objs) {
+        long startTime = System.currentTimeMillis();
+
+        // references first, so that explicit passed objects wins on duplicate id terms
+        List<Object> all = Stream.concat(objs.parallelStream().flatMap(o -> buildReferences(o).stream()),
+            objs.stream()).collect(Collectors.toList());
+
+        Map<IndexShard, Map<Term, Document>> updates = new LinkedHashMap<>();
+        Map<IndexShard, List<Document>> adds = new LinkedHashMap<>();
+
+        all.parallelStream()
+            .map(o -> new SimpleImmutableEntry<>(getShard(o.getClass()),
+                new SimpleImmutableEntry<>(buildIdTerm(o), buildDocument(o))))
+            .collect(Collectors.toList()).forEach(e -> {
+                Term idTerm = e.getValue().getKey();
+                if (idTerm != null) {
+                    Map<Term, Document> shardUpdates = updates.computeIfAbsent(e.getKey(),
+                        s -> new LinkedHashMap<>());
+                    shardUpdates.remove(idTerm);
+                    shardUpdates.put(idTerm, e.getValue().getValue());
+                } else {
+                    adds.computeIfAbsent(e.getKey(), s -> new ArrayList<>()).add(e.getValue().getValue());
+                }
+            });
+
+        Map<IndexShard, IndexWriteAction> actions = new LinkedHashMap<>();
+        shards.values().stream().filter(shard -> updates.containsKey(shard) || adds.containsKey(shard))
+            .forEach(shard -> actions.put(shard, IndexWriteAction.bulkAction(shard.getWriteExecutor(),
+                updates.getOrDefault(shard, Collections.emptyMap()), adds.getOrDefault(shard,
+                    Collections.emptyList()))));
+
+        LOGGER.info("Build {} documents for {} objects. ({}ms)",
+            updates.values().stream().mapToInt(Map::size).sum() + adds.values().stream().mapToInt(List::size).sum(),
+            objs.size(), System.currentTimeMillis() - startTime);
+
+        return actions;
     }
 
-    private <T> void addOrUpdate(T obj) {
+    private <T> CompletableFuture<Void> addOrUpdate(T obj) {
+        IndexShard shard = getShard(obj.getClass());
+        Term idTerm = buildIdTerm(obj);
         IndexWriteAction action = null;
 
-        if (Optional.ofNullable(buildIdTerm(obj)).isPresent() && !exists(obj)) {
-            LOGGER.info("add {}", obj);
-            action = IndexWriteAction.addAction(writeExecutor, buildDocument(obj));
-        } else {
+        // updateDocument is an atomic delete and add, so no lookup is needed to decide between both
+        if (idTerm != null) {
             LOGGER.info("update {}", obj);
-            action = IndexWriteAction.updateAction(writeExecutor, buildIdTerm(obj), buildDocument(obj));
+            action = IndexWriteAction.updateAction(shard.getWriteExecutor(), idTerm, buildDocument(obj));
+        } else {
+            LOGGER.info("add {}", obj);
+            action = IndexWriteAction.addAction(shard.getWriteExecutor(), buildDocument(obj));
         }
 
-        Optional.ofNullable(action).ifPresent(writeExecutor::submit);
+        shard.submit(action);
+        return action.completion();
     }
 
     private <T> Document buildDocument(T obj) {
-        Class<?> objCls = obj.getClass();
-        String fieldPrefix = objCls.getSimpleName() + ".";
-        Map<Method, Field> mm = annotatedMethods(objCls);
+        return DocumentCodec.of(obj).encode(obj);
+    }
 
-        Document doc = new Document();
-        doc.add(new StringField(OBJECT_CLASS_FIELD, objCls.getName(), Store.YES));
+    private <T> List<Object> buildReferences(T obj) {
+        return DocumentCodec.of(obj).references(obj);
+    }
 
-        mm.forEach((m, f) -> {
-            String name = fieldPrefix + (f.name().isEmpty() ? ObjectTools.getFieldName(m.getName()) : f.name());
-            Method getter = ObjectTools.getGetter(objCls, m);
+    public <T> List<T> get(Query query) {
+        return get(query, DEFAULT_LIMIT);
+    }
 
-            try {
-                if (Collection.class.isAssignableFrom(getter.getReturnType())) {
-                    Optional.ofNullable((Collection<?>) getter.invoke(obj))
-                        .ifPresent(vals -> {
-                            LOGGER.debug("set {}=\"{}\" from {}", name, vals, getter);
-                            vals.forEach(v -> {
-                                Optional.ofNullable(marshal(f, v))
-                                    .ifPresent(value -> doc.add(buildIndexableField(f, name, value)));
-                            });
-                        });
-                } else {
-                    Optional.ofNullable(marshal(f, getter.invoke(obj))).ifPresent(value -> {
-                        LOGGER.debug("set {}=\"{}\" from {}", name, value, getter);
-                        doc.add(buildIndexableField(f, name, value));
-                    });
-                }
-            } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException
-                | SecurityException e) {
-                throw (RuntimeException) e.getCause();
-            }
-        });
+    public <T> List<T> get(Query query, int limit) {
+        return get(query, limit, new HashMap<>());
+    }
 
-        Map<Method, IdRef> refs = annotatedRefs(objCls);
+    /**
+     * Returns the objects matching given query. The references of all hits are resolved together, with one
+     * query per reference field on the same {@link IndexSearcher}.
+     * 
+     * @param query the query
+     * @param limit the maximum number of hits
+     * @param referenceCache the already resolved references, can be shared between calls of one request
+     * @return the list of objects
+     */
+    public <T> List<T> get(Query query, int limit, Map<String, Object> referenceCache) {
+        warmer.record(query);
+        return find(query, limit, referenceCache);
+    }
+
+    private <T> List<T> find(Query query, int limit, Map<String, Object> referenceCache) {
+        IndexSearcher searcher = null;
+        try {
+            searcher = acquireSearcher();
+            return buildObjects(searcher, getDocuments(searcher, query, limit), referenceCache);
+        } catch (IOException e) {
+            LOGGER.error(e.getMessage(), e);
+            return Collections.emptyList();
+        } finally {
+            releaseSearcher(searcher);
+        }
+    }
 
-        refs.forEach((m, ref) -> {
-            String name = fieldPrefix + (ref.name().isEmpty() ? ObjectTools.getFieldName(m.getName()) : ref.name());
-            Method getter = ObjectTools.getGetter(objCls, m);
+    public <T> List<T> get(Class<T> type, Query query) {
+        return get(type, query, DEFAULT_LIMIT);
+    }
 
-            try {
-                if (Collection.class.isAssignableFrom(getter.getReturnType())) {
-                    Optional.ofNullable((Collection<?>) getter.invoke(obj))
-                        .ifPresent(vals -> {
-                            LOGGER.debug("set ref {}=\"{}\" from {}", name, vals, getter);
-                            vals.forEach(v -> Optional.ofNullable(buildReferenceId(v))
-                                .ifPresent(refId -> doc.add(new StringField(name, refId.toString(), Store.YES))));
-                        });
-                } else {
-                    Optional.ofNullable(getter.invoke(obj)).ifPresent(value -> {
-                        LOGGER.debug("set ref {}=\"{}\" from {}", name, value, getter);
-                        Optional.ofNullable(buildReferenceId(value))
-                            .ifPresent(refId -> doc.add(new StringField(name, refId.toString(), Store.YES)));
-                    });
-                }
-            } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException
-                | SecurityException e) {
-                throw (RuntimeException) e.getCause();
-            }
-        });
+    /**
+     * Returns the objects of given type matching the query. Only the shard of the type is searched, the
+     * references are resolved over all shards.
+     * 
+     * @param type the entity type
+     * @param query the query
+     * @param limit the maximum number of hits
+     * @return the list of objects
+     */
+    public <T> List<T> get(Class<T> type, Query query, int limit) {
+        if (shards.size() == 1) {
+            return get(query, limit);
+        }
+        warmer.record(query);
 
-        return doc;
+        IndexSearcher searcher = null;
+        List<Document> docs;
+        try {
+            searcher = acquireSearcher(type);
+            docs = getDocuments(searcher, query, limit);
+        } catch (IOException e) {
+            LOGGER.error(e.getMessage(), e);
+            return Collections.emptyList();
+        } finally {
+            releaseSearcher(searcher);
+        }
+        return buildObjects(docs);
     }
 
-    private <T> Object buildReferenceId(T obj) {
-        Class<?> objCls = obj.getClass();
-        String fieldPrefix = objCls.getSimpleName() + ".";
-        Map<Method, Field> mm = annotatedMethods(objCls);
+    /**
+     * Returns a page of objects of given type matching the query, starting at the offset.
+     * 
+     * @param type the entity type
+     * @param query the query
+     * @param offset the number of hits to skip
+     * @param limit the maximum number of hits
+     * @return the page
+     * @see #search(Class, Query, String, int)
+     */
+    public <T> Page<T> search(Class<T> type, Query query, int offset, int limit) {
+        return search(type, query, null, null, offset, limit);
+    }
 
-        return mm.entrySet().stream().filter(e -> e.getKey().isAnnotationPresent(Id.class)).map(e -> {
-            Method m = e.getKey();
-            Field f = e.getValue();
-            String name = fieldPrefix + (f.name().isEmpty() ? ObjectTools.getFieldName(m.getName()) : f.name());
-            Method getter = ObjectTools.getGetter(objCls, m);
+    /**
+     * Returns a page of objects of given type matching the query in given sort order, starting at the offset.
+     * 
+     * @param type the entity type
+     * @param query the query
+     * @param sort the sort order, or <code>null</code> to sort by relevance
+     * @param offset the number of hits to skip
+     * @param limit the maximum number of hits
+     * @return the page
+     * @see #search(Class, Query, Sort, String, int)
+     */
+    public <T> Page<T> search(Class<T> type, Query query, Sort sort, int offset, int limit) {
+        return search(type, query, sort, null, offset, limit);
+    }
 
-            try {
-                if (Collection.class.isAssignableFrom(getter.getReturnType())) {
-                    return Optional.ofNullable((Collection<?>) getter.invoke(obj)).orElse(Collections.emptyList())
-                        .stream()
-                        .map(v -> {
-                            try {
-                                return Optional.ofNullable(marshal(f, v)).map(id -> name + ":" + id);
-                            } catch (IllegalArgumentException ex) {
-                                throw (RuntimeException) ex.getCause();
-                            }
-                        }).findFirst().orElse(null);
-                } else {
-                    return Optional.ofNullable(marshal(f, getter.invoke(obj))).map(id -> name + ":" + id);
-                }
-            } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException
-                | SecurityException ex) {
-                throw (RuntimeException) ex.getCause();
-            }
-        }).filter(Optional::isPresent).map(Optional::get).findFirst().orElse(null);
+    /**
+     * Returns the page of objects of given type following the cursor. Unlike an offset, a cursor doesn't
+     * collect the hits of all previous pages. As long as the cursor isn't older than
+     * <code>Index.CursorMaxAgeSec</code>, the page is searched on the same point-in-time view of the index as
+     * the first page.
+     * 
+     * @param type the entity type
+     * @param query the query
+     * @param cursor the cursor of the previous page, or <code>null</code> for the first page
+     * @param limit the maximum number of hits
+     * @return the page
+     * @throws IllegalArgumentException if the cursor is invalid
+     */
+    public <T> Page<T> search(Class<T> type, Query query, String cursor, int limit) {
+        return search(type, query, null, cursor, 0, limit);
     }
 
-    private <T> List<Object> buildReferences(T obj) {
-        Class<?> objCls = obj.getClass();
-        Map<Method, IdRef> refs = annotatedRefs(objCls);
+    /**
+     * Returns the page of objects of given type in given sort order following the cursor. The cursor must have
+     * been returned by a search with the same sort order.
+     * 
+     * @param type the entity type
+     * @param query the query
+     * @param sort the sort order, or <code>null</code> to sort by relevance
+     * @param cursor the cursor of the previous page, or <code>null</code> for the first page
+     * @param limit the maximum number of hits
+     * @return the page
+     * @throws IllegalArgumentException if the cursor is invalid
+     * @see #search(Class, Query, String, int)
+     */
+    public <T> Page<T> search(Class<T> type, Query query, Sort sort, String cursor, int limit) {
+        return search(type, query, sort, cursor, 0, limit);
+    }
 
-        return refs.entrySet().stream().map(e -> {
-            Method getter = ObjectTools.getGetter(objCls, e.getKey());
-            try {
-                if (Collection.class.isAssignableFrom(getter.getReturnType())) {
-                    return Optional.ofNullable((Collection<?>) getter.invoke(obj))
-                        .map(vals -> vals.stream());
-                } else {
-                    return Optional.ofNullable(getter.invoke(obj)).map(Stream::of);
+    private <T> Page<T> search(Class<T> type, Query query, Sort sort, String cursor, int offset, int limit) {
+        warmer.record(query);
+        IndexShard shard = getShard(type);
+        SearchCursor after = cursor != null ? SearchCursor.parse(cursor) : null;
+
+        IndexSearcher searcher = null;
+        List<Document> docs = new ArrayList<>();
+        long totalHits;
+        String nextCursor = null;
+        try {
+            searcher = after != null ? shard.acquire(after.getVersion()) : null;
+            if (searcher == null) {
+                if (after != null) {
+                    LOGGER.debug("Searcher of cursor is expired, continue on current searcher.");
                 }
-            } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException
-                | SecurityException ex) {
-                throw (RuntimeException) ex.getCause();
+                searcher = shard.acquire();
             }
-        }).filter(Optional::isPresent).map(Optional::get).flatMap(ds -> ds).distinct().collect(Collectors.toList());
-    }
-
-    private IndexableField buildIndexableField(Field a, String name, Object value) {
-        if (value != null && a.index()) {
-            Class<?> valCls = value.getClass();
-            Store store = a.store() ? Store.YES : Store.NO;
-
-            if (String.class.isAssignableFrom(valCls)) {
-                return a.analyze() ? new TextField(name, (String) value, store)
-                    : new StringField(name, (String) value, store);
-            } else if (a.store() && valCls.isPrimitive()) {
-                if (Integer.class.isAssignableFrom(valCls)) {
-                    return new StoredField(name, (int) value);
-                } else if (Long.class.isAssignableFrom(valCls)) {
-                    return new StoredField(name, (long) value);
-                } else if (Double.class.isAssignableFrom(valCls)) {
-                    return new StoredField(name, (double) value);
-                } else if (Float.class.isAssignableFrom(valCls)) {
-                    return new StoredField(name, (float) value);
-                }
-            } else if (valCls.isPrimitive()) {
-                if (Integer.class.isAssignableFrom(valCls)) {
-                    return new IntPoint(name, (int) value);
-                } else if (Long.class.isAssignableFrom(valCls)) {
-                    return new LongPoint(name, (long) value);
-                } else if (Double.class.isAssignableFrom(valCls)) {
-                    return new DoublePoint(name, (double) value);
-                } else if (Float.class.isAssignableFrom(valCls)) {
-                    return new FloatPoint(name, (float) value);
+            long version = shard.record(searcher);
+
+            TopDocs topDocs;
+            if (sort != null) {
+                if (after != null && !(after.getAfter() instanceof FieldDoc)) {
+                    throw new IllegalArgumentException("Cursor doesn't match the sort order.");
                 }
+                topDocs = after != null ? searcher.searchAfter(after.getAfter(), query, limit, sort)
+                    : searcher.search(query, offset + limit, sort);
+            } else {
+                topDocs = after != null ? searcher.searchAfter(after.getAfter(), query, limit)
+                    : searcher.search(query, offset + limit);
             }
+            ScoreDoc[] hits = topDocs.scoreDocs;
+            for (int i = Math.min(after != null ? 0 : offset, hits.length); i < hits.length; i++) {
+                docs.add(searcher.doc(hits[i].doc));
+            }
+            totalHits = topDocs.totalHits;
+            if (!docs.isEmpty() && hits.length == (after != null ? limit : offset + limit)) {
+                nextCursor = new SearchCursor(version, hits[hits.length - 1]).toString();
+            }
+        } catch (IOException e) {
+            LOGGER.error(e.getMessage(), e);
+            return new Page<>(Collections.emptyList(), 0, null);
+        } finally {
+            releaseSearcher(searcher);
         }
-        return null;
+        return new Page<>(buildObjects(docs), totalHits, nextCursor);
     }
 
-    @SuppressWarnings("unchecked")
-    private <T> T marshal(Field a, Object value) {
+    public <T> boolean exists(T obj) {
+        IndexSearcher searcher = null;
         try {
-            return value != null ? (T) adapter(a).marshal(value) : null;
-        } catch (NoSuchMethodException | SecurityException | InstantiationException | IllegalAccessException
-            | IllegalArgumentException | InvocationTargetException e) {
-            throw (RuntimeException) e.getCause();
+            searcher = acquireSearcher(obj.getClass());
+            return searcher.count(new TermQuery(buildIdTerm(obj))) > 0;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            releaseSearcher(searcher);
         }
     }
 
-    public <T> List<T> get(Query query) {
-        return get(query, DEFAULT_LIMIT);
+    /**
+     * Passes all objects of the index, or only these of given type, to the consumer. The live documents are read
+     * segment by segment from a single point-in-time {@link IndexSearcher}. The references are resolved per batch
+     * of <code>Index.ExportBatchSize</code> documents, so that the memory usage doesn't grow with the index size.
+     * 
+     * @param type the entity type, or <code>null</code> for all objects
+     * @param consumer the consumer
+     * @return the number of passed objects
+     * @throws IOException if the index couldn't read
+     */
+    public long forEach(Class<?> type, Consumer<Object> consumer) throws IOException {
+        int batchSize = CONFIG.getInt(CONFIG_PREFIX + "ExportBatchSize", 500);
+        long count = 0;
+        IndexSearcher searcher = acquireSearcher();
+        try {
+            List<Document> batch = new ArrayList<>(batchSize);
+            for (LeafReaderContext context : searcher.getIndexReader().leaves()) {
+                LeafReader reader = context.reader();
+                Bits liveDocs = reader.getLiveDocs();
+                DocIdSetIterator docs = type != null
+                    ? reader.postings(new Term(DocumentCodec.OBJECT_CLASS_FIELD, type.getName()), PostingsEnum.NONE)
+                    : DocIdSetIterator.all(reader.maxDoc());
+                if (docs == null) {
+                    continue;
+                }
+                for (int doc = docs.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = docs.nextDoc()) {
+                    if (liveDocs == null || liveDocs.get(doc)) {
+                        batch.add(reader.document(doc));
+                        if (batch.size() == batchSize) {
+                            count += forEach(searcher, batch, consumer);
+                        }
+                    }
+                }
+            }
+            count += forEach(searcher, batch, consumer);
+        } finally {
+            releaseSearcher(searcher);
+        }
+        return count;
     }
 
-    public <T> List<T> get(Query query, int limit) {
-        return getDocuments(query, limit).stream().map(this::<T> buildObject)
-            .filter(o -> o != null)
-            .collect(Collectors.toList());
+    private int forEach(IndexSearcher searcher, List<Document> docs, Consumer<Object> consumer) throws IOException {
+        int size = docs.size();
+        buildObjects(searcher, docs, new HashMap<>()).forEach(consumer);
+        docs.clear();
+        return size;
     }
 
-    public <T> boolean exists(T obj) {
-        return !getDocuments(new TermQuery(buildIdTerm(obj)), 1).isEmpty();
+    private List<Document> getDocuments(IndexSearcher searcher, Query query, int limit) throws IOException {
+        List<Document> docs = new ArrayList<>();
+        for (ScoreDoc hit : searcher.search(query, limit).scoreDocs) {
+            docs.add(searcher.doc(hit.doc));
+        }
+        return docs;
     }
 
-    private List<Document> getDocuments(Query query, int limit) {
+    private <T> List<T> buildObjects(List<Document> docs) {
+        IndexSearcher searcher = null;
         try {
-            IndexReader reader = DirectoryReader.open(indexDir);
-            IndexSearcher searcher = new IndexSearcher(reader);
-            TopDocs docs = searcher.search(query, limit);
-
-            List<Document> result = Arrays.stream(docs.scoreDocs).map(h -> {
-                try {
-                    return searcher.doc(h.doc);
-                } catch (IOException e) {
-                    return null;
-                }
-            }).filter(o -> o != null).collect(Collectors.toList());
-
-            reader.close();
-
-            return result;
+            searcher = acquireSearcher();
+            return buildObjects(searcher, docs, new HashMap<>());
         } catch (IOException e) {
+            LOGGER.error(e.getMessage(), e);
             return Collections.emptyList();
+        } finally {
+            releaseSearcher(searcher);
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private <T> T buildObject(Document doc) {
-        try {
-            Class<?> objCls = this.getClass().getClassLoader().loadClass(doc.get(OBJECT_CLASS_FIELD));
-            String fieldPrefix = objCls.getSimpleName() + ".";
-            T obj = (T) objCls.newInstance();
-            Map<Method, Field> mm = annotatedMethods(objCls);
-
-            mm.entrySet().stream().filter(e -> e.getValue().store()).forEach(e -> {
-                Method m = e.getKey();
-                Field f = e.getValue();
-                String name = fieldPrefix + (f.name().isEmpty() ? ObjectTools.getFieldName(m.getName()) : f.name());
-                Method getter = ObjectTools.getGetter(objCls, m);
-                Method setter = ObjectTools.getSetter(objCls, m);
+    private <T> List<T> buildObjects(IndexSearcher searcher, List<Document> docs,
+        Map<String, Object> referenceCache) throws IOException {
+        resolveReferences(searcher, docs.stream().flatMap(d -> DocumentCodec.of(d).referenceIds(d).stream())
+            .distinct().filter(refId -> !referenceCache.containsKey(refId)).collect(Collectors.toList()),
+            referenceCache);
 
-                try {
-                    if (Collection.class.isAssignableFrom(getter.getReturnType())) {
-                        Collection<?> values = Arrays.stream(doc.getFields(name))
-                            .map(v -> unmarshal(f, v)).filter(v -> v != null).collect(Collectors.toList());
-                        LOGGER.debug("get {}=\"{}\" from {}", name, values, setter);
-                        setter.invoke(obj, values);
-                    } else {
-                        Object value = unmarshal(f, doc.getField(name));
-                        LOGGER.debug("get {}=\"{}\" from {}", name, value, setter);
-                        setter.invoke(obj, value);
-                    }
-                } catch (SecurityException | IllegalAccessException
-                    | IllegalArgumentException | InvocationTargetException ex) {
-                    throw (RuntimeException) ex.getCause();
-                }
-            });
+        return docs.stream().map(d -> DocumentCodec.<T> of(d).decode(d, referenceCache::get))
+            .collect(Collectors.toList());
+    }
 
-            Map<Method, IdRef> refs = annotatedRefs(objCls);
+    private void resolveReferences(IndexSearcher searcher, List<String> refIds, Map<String, Object> referenceCache)
+        throws IOException {
+        if (refIds.isEmpty()) {
+            return;
+        }
 
-            refs.forEach((m, ref) -> {
-                String name = fieldPrefix + (ref.name().isEmpty() ? ObjectTools.getFieldName(m.getName()) : ref.name());
-                Method getter = ObjectTools.getGetter(objCls, m);
-                Method setter = ObjectTools.getSetter(objCls, m);
+        // mark as requested, so that circular references are resolved to null
+        refIds.forEach(refId -> referenceCache.put(refId, null));
 
-                try {
-                    if (Collection.class.isAssignableFrom(getter.getReturnType())) {
-                        Collection<?> values = Arrays.stream(doc.getFields(name)).map(v -> {
-                            String[] id = v.stringValue().split(":", 2);
-                            return get(new TermQuery(new Term(id[0], id[1])), 1).stream().findFirst();
-                        }).filter(Optional::isPresent).map(Optional::get).collect(Collectors.toList());
-                        LOGGER.debug("get ref {}=\"{}\" from {}", name, values, setter);
-                        setter.invoke(obj, values);
-                    } else {
-                        Optional<Object> value = Optional.ofNullable(doc.getField(name)).map(v -> {
-                            String[] id = v.stringValue().split(":", 2);
-                            return get(new TermQuery(new Term(id[0], id[1])), 1).stream().findFirst();
-                        }).orElseGet(Optional::empty);
-                        LOGGER.debug("get ref {}=\"{}\" from {}", name, value.orElse(null), setter);
-                        setter.invoke(obj, value.orElse(null));
-                    }
-                } catch (IllegalArgumentException | SecurityException | IllegalAccessException
-                    | InvocationTargetException e) {
-                    throw (RuntimeException) e.getCause();
+        Map<String, List<BytesRef>> terms = refIds.stream().map(refId -> refId.split(":", 2))
+            .collect(Collectors.groupingBy(id -> id[0], LinkedHashMap::new,
+                Collectors.mapping(id -> new BytesRef(id[1]), Collectors.toList())));
+
+        List<Document> refDocs = new ArrayList<>();
+        for (Map.Entry<String, List<BytesRef>> e : terms.entrySet()) {
+            List<Integer> hits = new ArrayList<>();
+            searcher.search(new TermInSetQuery(e.getKey(), e.getValue()), new SimpleCollector() {
+                private int docBase;
+
+                @Override
+                protected void doSetNextReader(LeafReaderContext context) throws IOException {
+                    docBase = context.docBase;
+                }
+
+                @Override
+                public void collect(int doc) throws IOException {
+                    hits.add(docBase + doc);
+                }
+
+                @Override
+                public boolean needsScores() {
+                    return false;
                 }
             });
+            for (int doc : hits) {
+                refDocs.add(searcher.doc(doc));
+            }
+        }
 
-            return obj;
-        } catch (ClassNotFoundException | InstantiationException |
+        List<Object> refObjs = buildObjects(searcher, refDocs, referenceCache);
 
-            IllegalAccessException e) {
-            throw (RuntimeException) e.getCause();
+        for (int i = 0; i < refDocs.size(); i++) {
+            Document doc = refDocs.get(i);
+            Object obj = refObjs.get(i);
+            terms.keySet().forEach(field -> Arrays.stream(doc.getValues(field)).map(v -> field + ":" + v)
+                .filter(refId -> referenceCache.containsKey(refId) && referenceCache.get(refId) == null)
+                .forEach(refId -> referenceCache.put(refId, obj)));
         }
+
+        LOGGER.debug("Resolved {} references with {} queries.", refIds.size(), terms.size());
     }
 
     private <T> Term buildIdTerm(T obj) {
-        Class<?> objCls = obj.getClass();
-        String fieldPrefix = objCls.getSimpleName() + ".";
-        Map<Method, Field> mm = annotatedMethods(objCls);
+        return DocumentCodec.of(obj).idTerm(obj);
+    }
 
-        return mm.entrySet().stream().filter(e -> e.getKey().isAnnotationPresent(Id.class)).map(e -> {
-            Method m = e.getKey();
-            Field f = e.getValue();
-            String name = fieldPrefix + (f.name().isEmpty() ? ObjectTools.getFieldName(m.getName()) : f.name());
-            Method getter = ObjectTools.getGetter(objCls, m);
+    /**
+     * Returns statistics of the index, the commits and the segment merges.
+     * 
+     * @return the statistics
+     */
+    public Map<String, Number> getStats() {
+        Map<String, Number> stats = new LinkedHashMap<>();
+        IndexSearcher searcher = null;
+        try {
+            searcher = acquireSearcher();
+            IndexReader reader = searcher.getIndexReader();
+            stats.put("numDocs", reader.numDocs());
+            stats.put("maxDoc", reader.maxDoc());
+            stats.put("deletedDocs", reader.numDeletedDocs());
+            stats.put("segments", reader.leaves().size());
+        } catch (IOException e) {
+            LOGGER.warn("Error while reading index statistics.", e);
+        } finally {
+            releaseSearcher(searcher);
+        }
+        stats.put("queuedWrites", sum(shard -> shard.getWriteQueue().getQueuedDocs()));
+        long enqueued = sum(shard -> shard.getWriteQueue().getEnqueuedCount());
+        stats.put("averageEnqueueTimeMs", enqueued == 0 ? 0d
+            : shards.values().stream().mapToDouble(shard -> shard.getWriteQueue().getAverageEnqueueTime()
+                * shard.getWriteQueue().getEnqueuedCount()).sum() / enqueued);
+        stats.put("maxEnqueueTimeMs",
+            shards.values().stream().mapToDouble(shard -> shard.getWriteQueue().getMaxEnqueueTime()).max().orElse(0));
+        stats.put("coalescedWrites", sum(shard -> shard.getWriteQueue().getCoalescedCount()));
+        stats.put("rejectedWrites", sum(shard -> shard.getWriteExecutor().getRejectedCount()));
+        stats.put("skippedWrites", sum(shard -> shard.getWriteExecutor().getSkippedCount()));
+        long commits = sum(shard -> shard.getWriteExecutor().getCommitCount());
+        long committedChanges = sum(shard -> shard.getWriteExecutor().getCommittedChanges());
+        stats.put("commits", commits);
+        stats.put("committedChanges", committedChanges);
+        stats.put("averageCommitBatchSize", commits == 0 ? 0d : (double) committedChanges / commits);
+        stats.put("merges", sum(shard -> shard.getWriteExecutor().getMergeCount()));
+        stats.put("mergedDocs", sum(shard -> shard.getWriteExecutor().getMergedDocs()));
+        stats.put("mergeTimeMs", sum(shard -> shard.getWriteExecutor().getMergeTime()));
+        stats.put("maintenanceMerges", maintenanceMerges.get());
+        stats.put("shards", shards.size());
+        return stats;
+    }
 
-            try {
-                if (Collection.class.isAssignableFrom(getter.getReturnType())) {
-                    return Optional.ofNullable((Collection<?>) getter.invoke(obj))
-                        .map(vals -> {
-                            return vals.stream().map(
-                                v -> Optional.ofNullable(marshal(f, v)).map(value -> new Term(name, value.toString())))
-                                .filter(Optional::isPresent).findFirst().map(Optional::get).orElse(null);
-                        }).orElse(null);
-                } else {
-                    return Optional.ofNullable(marshal(f, getter.invoke(obj)))
-                        .map(value -> new Term(name, value.toString())).orElse(null);
-                }
-            } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException
-                | SecurityException ex) {
-                throw (RuntimeException) ex.getCause();
-            }
-        }).findFirst().orElse(null);
+    private long sum(ToLongFunction<IndexShard> counter) {
+        return shards.values().stream().mapToLong(counter).sum();
     }
 
-    @SuppressWarnings("unchecked")
-    private <T> Object unmarshal(Field a, IndexableField f) {
-        return f != null ? Stream.of(Optional.ofNullable(f.numericValue()),
-            Optional.ofNullable(f.stringValue())).filter(Optional::isPresent).map(v -> {
-                try {
-                    return adapter(a).unmarshal(v.get());
-                } catch (NoSuchMethodException | SecurityException | InstantiationException | IllegalAccessException
-                    | IllegalArgumentException | InvocationTargetException e) {
-                    LOGGER.error(e.getMessage(), e);
-                    return null;
-                }
-            }).filter(v -> v != null).findFirst().orElse(null) : null;
+    /**
+     * Requests segment merges on every shard whose ratio of deleted documents or number of segments exceeds
+     * the configured thresholds. The merges runs in background and doesn't block the writes.
+     */
+    private void maintain() {
+        shards.values().stream().filter(IndexShard::maintain).forEach(shard -> maintenanceMerges.incrementAndGet());
+        LOGGER.info("Index statistics: {}", getStats());
+    }
+
+    /**
+     * Writes a backup of all shards to a new directory below <code>Index.SnapshotPath</code> while the writes
+     * continue. A backup can be restored on startup with <code>Index.RestoreFrom</code>.
+     * 
+     * @return the backup directory
+     * @throws IOException if the backup failed
+     */
+    public Path backup() throws IOException {
+        Path target = Paths.get(CONFIG.getString(CONFIG_PREFIX + "SnapshotPath", indexPath + ".snapshots"),
+            new SimpleDateFormat("yyyyMMdd-HHmmss-SSS", Locale.ROOT).format(new Date()));
+        for (IndexShard shard : shards.values()) {
+            shard.backup(shard.getName() != null ? target.resolve(shard.getName()) : target);
+        }
+        return target;
     }
 
-    public void optimize() {
-        writeExecutor.submit(IndexWriteAction.optimizeAction(writeExecutor));
+    /**
+     * A page of search results.
+     *
+     * @param <T> the entity type
+     */
+    public static class Page<T> {
+
+        private final List<T> hits;
+
+        private final long totalHits;
+
+        private final String cursor;
+
+        Page(List<T> hits, long totalHits, String cursor) {
+            this.hits = hits;
+            this.totalHits = totalHits;
+            this.cursor = cursor;
+        }
+
+        /**
+         * @return the objects of this page
+         */
+        public List<T> getHits() {
+            return hits;
+        }
+
+        /**
+         * @return the number of all matching objects
+         */
+        public long getTotalHits() {
+            return totalHits;
+        }
+
+        /**
+         * @return the cursor of the following page, <code>null</code> if this is the last page
+         */
+        public String getCursor() {
+            return cursor;
+        }
     }
 }
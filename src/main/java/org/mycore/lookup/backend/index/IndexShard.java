@@ -0,0 +1,566 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See http://www.mycore.de/ for details.
+ *
+ * This program is free software; you can use it, redistribute it
+ * and / or modify it under the terms of the GNU General Public License
+ * (GPL) as published by the Free Software Foundation; either version 2
+ * of the License or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program, in a file called gpl.txt or license.txt.
+ * If not, write to the Free Software Foundation Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA  02111-1307 USA
+ */
+package org.mycore.lookup.backend.index;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherLifetimeManager;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.FileSwitchDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Bits;
+import org.mycore.lookup.backend.index.codec.DocumentCodec;
+import org.mycore.lookup.common.config.Configuration;
+
+/**
+ * A single Lucene index directory with its own write queue, {@link IndexWriteExecutor},
+ * journal and {@link SearcherManager}. The directory, merge and maintenance settings of a shard are read from
+ * <code>Index.&lt;name&gt;.*</code> and default to the global <code>Index.*</code> settings.
+ */
+class IndexShard implements Closeable {
+
+    /**
+     * The {@link Directory} implementation of a shard, configured with <code>Index.DirectoryType</code>.
+     */
+    enum DirectoryType {
+        /**
+         * The best {@link FSDirectory} for the platform.
+         */
+        FS,
+
+        /**
+         * A {@link MMapDirectory}, the files listed in <code>Index.PreloadExtensions</code>, by default the
+         * term dictionaries, are loaded into physical memory on open.
+         */
+        MMAP,
+
+        /**
+         * A {@link NIOFSDirectory}, it doesn't reserve virtual memory for the index files.
+         */
+        NIO,
+
+        /**
+         * A in-heap {@link RAMDirectory} loaded from disk on startup. Every <code>Index.SnapshotIntervalMs</code>
+         * and on close, the last commit is copied back to disk. The journal keeps the changes until they are part
+         * of a snapshot, so that they are replayed after a crash.
+         */
+        RAM
+    }
+
+    private static final Configuration CONFIG = Configuration.instance();
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final String CONFIG_PREFIX = "Index.";
+
+    private final String name;
+
+    private final Path path;
+
+    private final Directory indexDir;
+
+    private FSDirectory snapshotDir;
+
+    private ScheduledExecutorService snapshotScheduler;
+
+    private final Object snapshotLock = new Object();
+
+    private long snapshotGeneration = -1;
+
+    private final IndexWriteQueue writeQueue;
+
+    private final IndexWriteExecutor writeExecutor;
+
+    private final SearcherManager searcherManager;
+
+    private final SearcherLifetimeManager searcherLifetimeManager = new SearcherLifetimeManager();
+
+    private final double maxSearcherAge;
+
+    private IndexJournal journal;
+
+    private final Object submitLock = new Object();
+
+    private final double maxDeletedRatio;
+
+    private final int maxSegments;
+
+    /**
+     * Opens the shard at given path and replays its journal. An empty index is created if none exists.
+     * 
+     * @param name the name of the shard, or <code>null</code> for an unsharded index
+     * @param path the index directory
+     * @param analyzer the analyzer
+     * @throws IOException if the index couldn't opened
+     */
+    IndexShard(String name, Path path, Analyzer analyzer) throws IOException {
+        this.name = name;
+        this.path = path;
+        if (Files.notExists(path)) {
+            Files.createDirectories(path);
+        }
+
+        String restoreFrom = CONFIG.getString(CONFIG_PREFIX + "RestoreFrom", null);
+        if (restoreFrom != null) {
+            restore(name != null ? Paths.get(restoreFrom, name) : Paths.get(restoreFrom));
+        }
+        DirectoryType directoryType = DirectoryType.valueOf(CONFIG.getString(settingName("DirectoryType"),
+            CONFIG.getString(CONFIG_PREFIX + "DirectoryType", DirectoryType.FS.name())).toUpperCase(Locale.ROOT));
+        indexDir = openDirectory(directoryType, path);
+
+        if (!DirectoryReader.indexExists(indexDir)) {
+            LOGGER.info("Create empty index at {}.", path);
+            new IndexWriter(indexDir, new IndexWriterConfig(analyzer)).close();
+        }
+
+        long indexSize = 0;
+        String[] files = indexDir.listAll();
+        for (String file : files) {
+            indexSize += indexDir.fileLength(file);
+        }
+        LOGGER.info("Opened {} at {} with {} directory ({}), {} files with {} MB.", this, path, directoryType,
+            indexDir.getClass().getSimpleName(), files.length,
+            String.format(Locale.ROOT, "%.1f", indexSize / 1024d / 1024d));
+
+        if (snapshotDir != null) {
+            long snapshotInterval = CONFIG.getLong(CONFIG_PREFIX + "SnapshotIntervalMs", 60000);
+            snapshotScheduler = Executors.newSingleThreadScheduledExecutor();
+            snapshotScheduler.scheduleWithFixedDelay(this::snapshot, snapshotInterval, snapshotInterval,
+                TimeUnit.MILLISECONDS);
+        }
+
+        writeQueue = new IndexWriteQueue(CONFIG.getInt(CONFIG_PREFIX + "MaxQueuedWrites", 10000),
+            IndexWriteQueue.OverflowPolicy.valueOf(
+                CONFIG.getString(CONFIG_PREFIX + "QueueOverflowPolicy", "BLOCK").toUpperCase(Locale.ROOT)),
+            CONFIG.getBoolean(CONFIG_PREFIX + "CoalesceWrites", true));
+        writeExecutor = new IndexWriteExecutor(writeQueue, indexDir, analyzer, name);
+
+        // with a permanently opened writer searchers are opened near-real-time from the writer
+        if (writeExecutor.isKeepWriterOpen() && writeExecutor.getIndexWriter() != null) {
+            searcherManager = new SearcherManager(writeExecutor.getIndexWriter(), true, false, null);
+        } else {
+            searcherManager = new SearcherManager(indexDir, null);
+        }
+        writeExecutor.addCommitListener(this::refresh);
+        writeExecutor.setContentHashLookup(this::getContentHash);
+
+        if (CONFIG.getBoolean(CONFIG_PREFIX + "Journal", true)) {
+            String journalPath = path.toString() + ".journal";
+            if (name == null) {
+                journalPath = CONFIG.getString(CONFIG_PREFIX + "JournalPath", journalPath);
+            }
+            // the commits of a RAM shard are durable only after the snapshot
+            journal = new IndexJournal(Paths.get(journalPath), snapshotDir != null);
+            List<IndexWriteAction> actions = journal.replay(writeExecutor);
+            if (!actions.isEmpty()) {
+                LOGGER.info("Replay {} journaled write actions of {}.", actions.size(), this);
+                actions.forEach(writeExecutor::execute);
+            }
+        }
+
+        maxSearcherAge = CONFIG.getDouble(CONFIG_PREFIX + "CursorMaxAgeSec", 600);
+        maxDeletedRatio = CONFIG.getDouble(settingName("MaxDeletedRatio"),
+            CONFIG.getDouble(CONFIG_PREFIX + "MaxDeletedRatio", 0.2));
+        maxSegments = CONFIG.getInt(settingName("MaxSegments"), CONFIG.getInt(CONFIG_PREFIX + "MaxSegments", 20));
+    }
+
+    private Directory openDirectory(DirectoryType type, Path path) throws IOException {
+        switch (type) {
+            case MMAP:
+                Set<String> preloadExtensions = new HashSet<>(
+                    CONFIG.getStrings(CONFIG_PREFIX + "PreloadExtensions", Arrays.asList("tim", "tip")));
+                MMapDirectory preloaded = new MMapDirectory(path);
+                preloaded.setPreload(true);
+                return new FileSwitchDirectory(preloadExtensions, preloaded, new MMapDirectory(path), true);
+            case NIO:
+                return new NIOFSDirectory(path);
+            case RAM:
+                snapshotDir = FSDirectory.open(path);
+                return new RAMDirectory(snapshotDir, IOContext.DEFAULT);
+            default:
+                return FSDirectory.open(path);
+        }
+    }
+
+    /**
+     * Copies the last commit of a {@link DirectoryType#RAM} shard to disk. The segments file is copied after
+     * all segment files, so that the directory on disk always contains a complete commit. Afterwards the journal
+     * records of the actions committed before are released.
+     */
+    void snapshot() {
+        if (snapshotDir == null) {
+            return;
+        }
+        synchronized (snapshotLock) {
+            // actions are completed after their commit, so the latest commit contains them
+            long checkpoint = journal != null ? journal.checkpoint() : 0;
+            try {
+                SegmentInfos commit = SegmentInfos.readLatestCommit(indexDir);
+                if (commit.getGeneration() == snapshotGeneration) {
+                    releaseJournal(checkpoint);
+                    return;
+                }
+                long startTime = System.currentTimeMillis();
+                String segmentsFile = commit.getSegmentsFileName();
+                Collection<String> files = commit.files(false);
+                Set<String> existing = new HashSet<>(Arrays.asList(snapshotDir.listAll()));
+                for (String file : files) {
+                    // segment files are never changed, only files of a interrupted snapshot must be copied again
+                    if (!existing.contains(file) || snapshotDir.fileLength(file) != indexDir.fileLength(file)) {
+                        if (existing.contains(file)) {
+                            snapshotDir.deleteFile(file);
+                        }
+                        snapshotDir.copyFrom(indexDir, file, file, IOContext.DEFAULT);
+                    }
+                }
+                snapshotDir.sync(files);
+                snapshotDir.copyFrom(indexDir, segmentsFile, segmentsFile, IOContext.DEFAULT);
+                snapshotDir.sync(Collections.singleton(segmentsFile));
+                snapshotDir.syncMetaData();
+
+                for (String file : snapshotDir.listAll()) {
+                    if (!file.equals(segmentsFile) && !files.contains(file)
+                        && !IndexWriter.WRITE_LOCK_NAME.equals(file)) {
+                        snapshotDir.deleteFile(file);
+                    }
+                }
+                snapshotGeneration = commit.getGeneration();
+                releaseJournal(checkpoint);
+                LOGGER.info("Snapshot of {} with generation {} written. ({}ms)", this, snapshotGeneration,
+                    System.currentTimeMillis() - startTime);
+            } catch (NoSuchFileException | FileNotFoundException e) {
+                // the commit was superseded while copying, the next run takes the new one
+                LOGGER.debug("Snapshot of {} skipped, commit was superseded.", this);
+            } catch (IOException e) {
+                LOGGER.warn("Error while writing snapshot of " + this + ".", e);
+            }
+        }
+    }
+
+    private void releaseJournal(long checkpoint) {
+        if (journal != null) {
+            journal.release(checkpoint);
+        }
+    }
+
+    /**
+     * Replaces the index with the backup in given directory. A backup is restored only once, the restored
+     * backup is recorded in a file next to the index directory.
+     */
+    private void restore(Path source) throws IOException {
+        Path marker = Paths.get(path.toString() + ".restored");
+        if (Files.exists(marker) && new String(Files.readAllBytes(marker), StandardCharsets.UTF_8)
+            .equals(source.toAbsolutePath().toString())) {
+            return;
+        }
+        try (FSDirectory sourceDir = FSDirectory.open(source); FSDirectory targetDir = FSDirectory.open(path)) {
+            if (!DirectoryReader.indexExists(sourceDir)) {
+                LOGGER.warn("Couldn't restore {}, there is no index at {}.", this, source);
+                return;
+            }
+            LOGGER.info("Restore {} from {}.", this, source);
+            for (String file : targetDir.listAll()) {
+                targetDir.deleteFile(file);
+            }
+            SegmentInfos commit = SegmentInfos.readLatestCommit(sourceDir);
+            Collection<String> files = commit.files(false);
+            for (String file : files) {
+                targetDir.copyFrom(sourceDir, file, file, IOContext.DEFAULT);
+            }
+            targetDir.copyFrom(sourceDir, commit.getSegmentsFileName(), commit.getSegmentsFileName(),
+                IOContext.DEFAULT);
+            targetDir.sync(commit.files(true));
+            targetDir.syncMetaData();
+        }
+        Files.write(marker, source.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Copies the last commit to the target directory while the writes continue. The commit is pinned by the
+     * {@link org.apache.lucene.index.SnapshotDeletionPolicy} of the writer during the copy, so that its files
+     * aren't deleted by following commits or merges. The files are hard linked if possible, otherwise they are
+     * copied in parallel.
+     * 
+     * @param target the target directory
+     * @throws IOException if the backup failed
+     */
+    void backup(Path target) throws IOException {
+        long startTime = System.currentTimeMillis();
+        IndexCommit commit = writeExecutor.snapshot();
+        try (FSDirectory targetDir = FSDirectory.open(target)) {
+            String segmentsFile = commit.getSegmentsFileName();
+            Collection<String> files = commit.getFileNames();
+            // the segments file is written last, so that only a complete backup is a valid index
+            files.parallelStream().filter(file -> !file.equals(segmentsFile))
+                .forEach(file -> backup(file, targetDir));
+            backup(segmentsFile, targetDir);
+            targetDir.sync(files);
+            targetDir.syncMetaData();
+            LOGGER.info("Backup of {} with generation {} and {} files written to {}. ({}ms)", this,
+                commit.getGeneration(), files.size(), target, System.currentTimeMillis() - startTime);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            writeExecutor.releaseSnapshot(commit);
+        }
+    }
+
+    private void backup(String file, FSDirectory targetDir) {
+        try {
+            if (snapshotDir == null) {
+                try {
+                    Files.createLink(targetDir.getDirectory().resolve(file), path.resolve(file));
+                    return;
+                } catch (UnsupportedOperationException | IOException e) {
+                    LOGGER.debug("Couldn't link {}, copy it.", file);
+                }
+            }
+            targetDir.copyFrom(indexDir, file, file, IOContext.DEFAULT);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String settingName(String setting) {
+        return name != null ? CONFIG_PREFIX + name + "." + setting : CONFIG_PREFIX + setting;
+    }
+
+    /**
+     * @return the name of the shard, <code>null</code> for an unsharded index
+     */
+    String getName() {
+        return name;
+    }
+
+    Directory getIndexDir() {
+        return indexDir;
+    }
+
+    IndexWriteQueue getWriteQueue() {
+        return writeQueue;
+    }
+
+    IndexWriteExecutor getWriteExecutor() {
+        return writeExecutor;
+    }
+
+    IndexSearcher acquire() throws IOException {
+        return searcherManager.acquire();
+    }
+
+    /**
+     * Acquires a previously recorded {@link IndexSearcher}.
+     * 
+     * @param version the version returned by {@link #record(IndexSearcher)}
+     * @return the searcher or <code>null</code> if it's already pruned
+     */
+    IndexSearcher acquire(long version) {
+        return searcherLifetimeManager.acquire(version);
+    }
+
+    /**
+     * Records the searcher, so that it can be acquired again with {@link #acquire(long)}
+     * for <code>Index.CursorMaxAgeSec</code> after it was replaced by a newer one.
+     * 
+     * @param searcher the searcher
+     * @return the version of the searcher
+     * @throws IOException if the searcher couldn't recorded
+     */
+    long record(IndexSearcher searcher) throws IOException {
+        return searcherLifetimeManager.record(searcher);
+    }
+
+    void release(IndexSearcher searcher) throws IOException {
+        searcherManager.release(searcher);
+    }
+
+    void refresh() {
+        try {
+            searcherLifetimeManager.prune(new SearcherLifetimeManager.PruneByAge(maxSearcherAge));
+            searcherManager.maybeRefreshBlocking();
+        } catch (IOException e) {
+            LOGGER.warn("Error while refreshing IndexSearcher of " + this + ".", e);
+        }
+    }
+
+    /**
+     * Records the action in the journal, if enabled, and queues it for execution. Both happen under one lock, so
+     * that the actions are replayed in the order they were executed.
+     * 
+     * @param action the action
+     */
+    void submit(IndexWriteAction action) {
+        synchronized (submitLock) {
+            if (journal != null) {
+                journal.append(action);
+            }
+            writeExecutor.execute(action);
+        }
+    }
+
+    /**
+     * Requests segment merges if the ratio of deleted documents or the number of segments exceeds
+     * the configured thresholds. The merges runs in background and doesn't block the writes.
+     * 
+     * @return <code>true</code> if a merge was requested
+     */
+    boolean maintain() {
+        IndexSearcher searcher = null;
+        try {
+            searcher = acquire();
+            IndexReader reader = searcher.getIndexReader();
+            int segments = reader.leaves().size();
+            double deletedRatio = reader.maxDoc() == 0 ? 0 : (double) reader.numDeletedDocs() / reader.maxDoc();
+
+            boolean expungeDeletes = deletedRatio > maxDeletedRatio;
+            boolean reduceSegments = segments > maxSegments;
+            if (expungeDeletes || reduceSegments) {
+                LOGGER.info("Merge {} with {} segments and {}% deleted documents.", this, segments,
+                    String.format(Locale.ROOT, "%.1f", deletedRatio * 100));
+                writeExecutor.execute(
+                    IndexWriteAction.mergeAction(writeExecutor, reduceSegments ? maxSegments : 0, expungeDeletes));
+                return true;
+            }
+            return false;
+        } catch (IOException e) {
+            LOGGER.warn("Error while maintenance of " + this + ".", e);
+            return false;
+        } finally {
+            if (searcher != null) {
+                try {
+                    release(searcher);
+                } catch (IOException e) {
+                    LOGGER.warn("Error while releasing IndexSearcher.", e);
+                }
+            }
+        }
+    }
+
+    private Long getContentHash(Term idTerm) {
+        IndexSearcher searcher = null;
+        try {
+            searcher = acquire();
+            for (LeafReaderContext context : searcher.getIndexReader().leaves()) {
+                LeafReader reader = context.reader();
+                PostingsEnum postings = reader.postings(idTerm, PostingsEnum.NONE);
+                if (postings == null) {
+                    continue;
+                }
+                Bits liveDocs = reader.getLiveDocs();
+                for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                    if (liveDocs == null || liveDocs.get(doc)) {
+                        NumericDocValues hashes = reader.getNumericDocValues(DocumentCodec.CONTENT_HASH_FIELD);
+                        return hashes != null && hashes.advanceExact(doc) ? hashes.longValue() : null;
+                    }
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            LOGGER.warn("Error while reading content hash.", e);
+            return null;
+        } finally {
+            if (searcher != null) {
+                try {
+                    release(searcher);
+                } catch (IOException e) {
+                    LOGGER.warn("Error while releasing IndexSearcher.", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for all queued write actions, closes the journal and the {@link SearcherManager}.
+     */
+    @Override
+    public void close() {
+        // waits for the queued actions
+        writeExecutor.shutdown();
+        LOGGER.info("Processed all {} modification requests of {}.", writeExecutor.getCompletedTaskCount(), this);
+        LOGGER.info("Committed {} changes with {} commits (average batch size {}).",
+            writeExecutor.getCommittedChanges(), writeExecutor.getCommitCount(),
+            String.format(Locale.ROOT, "%.1f", writeExecutor.getAverageCommitBatchSize()));
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdown();
+            snapshot();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+        try {
+            searcherLifetimeManager.close();
+            searcherManager.close();
+        } catch (IOException e) {
+            LOGGER.warn("Error while closing SearcherManager", e);
+        }
+        try {
+            indexDir.close();
+            if (snapshotDir != null) {
+                snapshotDir.close();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Error while closing directory of " + this, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name != null ? "index shard " + name : "index";
+    }
+}
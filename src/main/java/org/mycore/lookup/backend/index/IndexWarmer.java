@@ -0,0 +1,232 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See http://www.mycore.de/ for details.
+ *
+ * This program is free software; you can use it, redistribute it
+ * and / or modify it under the terms of the GNU General Public License
+ * (GPL) as published by the Free Software Foundation; either version 2
+ * of the License or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program, in a file called gpl.txt or license.txt.
+ * If not, write to the Free Software Foundation Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA  02111-1307 USA
+ */
+package org.mycore.lookup.backend.index;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.DisjunctionMaxQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.PointRangeQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.mycore.lookup.backend.index.codec.DocumentCodec;
+import org.mycore.lookup.common.config.Configuration;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Warms up the index on startup, so that the first requests don't pay for cold page caches, term dictionaries
+ * and JIT. The warmup queries are configured with <code>Index.WarmupQueries</code> and completed by the most
+ * frequent queries of the previous run, which are counted while running and saved on shutdown. At most
+ * <code>Index.WarmupTrackedQueries</code> queries are counted, the least recently executed are evicted first.
+ */
+class IndexWarmer {
+
+    private static final Configuration CONFIG = Configuration.instance();
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final String CONFIG_PREFIX = "Index.";
+
+    private final Path queriesFile;
+
+    private final Analyzer analyzer;
+
+    private final Cache<Query, LongAdder> queryCounts = CacheBuilder.newBuilder()
+        .maximumSize(CONFIG.getInt(CONFIG_PREFIX + "WarmupTrackedQueries", 10000)).build();
+
+    /**
+     * @param queriesFile the file to store the most frequent queries in
+     * @param analyzer the analyzer to parse the queries with
+     */
+    IndexWarmer(Path queriesFile, Analyzer analyzer) {
+        this.queriesFile = queriesFile;
+        this.analyzer = analyzer;
+    }
+
+    /**
+     * Counts a executed query. Single term queries, like the lookups by id, are not counted, their terms are
+     * different for every request and warming them up doesn't help the next one.
+     * 
+     * @param query the query
+     */
+    void record(Query query) {
+        if (query instanceof TermQuery) {
+            return;
+        }
+        LongAdder count = queryCounts.getIfPresent(query);
+        if (count == null) {
+            count = queryCounts.asMap().computeIfAbsent(query, q -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    /**
+     * Saves the <code>Index.WarmupQueryCount</code> most frequent queries for the warmup of the next run.
+     */
+    void save() {
+        if (queryCounts.size() == 0) {
+            return;
+        }
+        List<String> top = queryCounts.asMap().entrySet().stream()
+            .sorted((e1, e2) -> Long.compare(e2.getValue().sum(), e1.getValue().sum()))
+            .map(e -> toQueryString(e.getKey())).filter(q -> !q.isEmpty()).distinct()
+            .limit(CONFIG.getInt(CONFIG_PREFIX + "WarmupQueryCount", 100)).collect(Collectors.toList());
+        try {
+            Files.write(queriesFile, top, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            LOGGER.warn("Couldn't save warmup queries.", e);
+        }
+    }
+
+    /**
+     * @return the configured queries and the saved queries of the previous run
+     */
+    List<Query> queries() {
+        List<Query> queries = new ArrayList<>();
+        parse(CONFIG.getStrings(CONFIG_PREFIX + "WarmupQueries", Collections.emptyList()), analyzer, queries);
+        if (Files.exists(queriesFile)) {
+            try {
+                // the saved terms are already analyzed
+                parse(Files.readAllLines(queriesFile, StandardCharsets.UTF_8), new KeywordAnalyzer(), queries);
+            } catch (IOException e) {
+                LOGGER.warn("Couldn't read warmup queries.", e);
+            }
+        }
+        return queries.stream().distinct().collect(Collectors.toList());
+    }
+
+    private void parse(List<String> queries, Analyzer analyzer, List<Query> parsed) {
+        QueryParser parser = new QueryParser(DocumentCodec.OBJECT_CLASS_FIELD, analyzer);
+        for (String q : queries) {
+            try {
+                parsed.add(parser.parse(q));
+            } catch (ParseException e) {
+                LOGGER.debug("Skip warmup query {}, it couldn't parsed.", q);
+            }
+        }
+    }
+
+    /**
+     * Returns the query in the syntax of the {@link QueryParser}. Other than {@link Query#toString()}, the terms
+     * are escaped, so that the query can be parsed again. Point queries and queries matching nothing have no
+     * query parser syntax, they are left out.
+     */
+    static String toQueryString(Query query) {
+        if (query instanceof PointRangeQuery || query instanceof MatchNoDocsQuery) {
+            return "";
+        } else if (query instanceof TermQuery) {
+            Term term = ((TermQuery) query).getTerm();
+            return term.field() + ":" + QueryParser.escape(term.text());
+        } else if (query instanceof PrefixQuery) {
+            Term prefix = ((PrefixQuery) query).getPrefix();
+            return prefix.field() + ":" + QueryParser.escape(prefix.text()) + "*";
+        } else if (query instanceof BoostQuery) {
+            BoostQuery boostQuery = (BoostQuery) query;
+            return "(" + toQueryString(boostQuery.getQuery()) + ")^" + boostQuery.getBoost();
+        } else if (query instanceof DisjunctionMaxQuery) {
+            // warms the same terms as a boolean disjunction
+            String disjuncts = ((DisjunctionMaxQuery) query).getDisjuncts().stream().map(IndexWarmer::toQueryString)
+                .filter(q -> !q.isEmpty()).collect(Collectors.joining(" "));
+            return disjuncts.isEmpty() ? "" : "(" + disjuncts + ")";
+        } else if (query instanceof BooleanQuery) {
+            String clauses = ((BooleanQuery) query).clauses().stream().map(clause -> {
+                String q = toQueryString(clause.getQuery());
+                if (q.isEmpty()) {
+                    return q;
+                }
+                switch (clause.getOccur()) {
+                    case MUST:
+                    case FILTER:
+                        return "+" + q;
+                    case MUST_NOT:
+                        return "-" + q;
+                    default:
+                        return q;
+                }
+            }).filter(q -> !q.isEmpty()).collect(Collectors.joining(" "));
+            return clauses.isEmpty() ? "" : "(" + clauses + ")";
+        }
+        return query.toString();
+    }
+
+    /**
+     * Runs all warmup queries <code>Index.WarmupRounds</code> times and logs the latency percentiles of the
+     * first and the last round.
+     * 
+     * @param search the search to warm up
+     */
+    void warmUp(Consumer<Query> search) {
+        List<Query> queries = queries();
+        if (queries.isEmpty()) {
+            return;
+        }
+
+        int rounds = Math.max(1, CONFIG.getInt(CONFIG_PREFIX + "WarmupRounds", 3));
+        long startTime = System.currentTimeMillis();
+        long[] first = null;
+        long[] last = null;
+        for (int round = 0; round < rounds; round++) {
+            last = new long[queries.size()];
+            for (int i = 0; i < queries.size(); i++) {
+                long queryStart = System.nanoTime();
+                search.accept(queries.get(i));
+                last[i] = System.nanoTime() - queryStart;
+            }
+            Arrays.sort(last);
+            if (first == null) {
+                first = last;
+            }
+        }
+
+        LOGGER.info("Warmup with {} queries in {} rounds took {}ms, latency p50/p90/p99 before {}, after {}.",
+            queries.size(), rounds, System.currentTimeMillis() - startTime, percentiles(first),
+            percentiles(last));
+    }
+
+    private static String percentiles(long[] sorted) {
+        return Arrays.stream(new double[] { 0.5, 0.9, 0.99 })
+            .mapToObj(p -> String.format(Locale.ROOT, "%.2fms",
+                sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)] / 1000000d))
+            .collect(Collectors.joining("/"));
+    }
+}
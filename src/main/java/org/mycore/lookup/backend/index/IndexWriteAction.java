@@ -20,6 +20,11 @@
 package org.mycore.lookup.backend.index;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -40,9 +45,19 @@ public class IndexWriteAction implements Runnable {
 
     private Document doc;
 
+    private Map<Term, Document> updates;
+
+    private Collection<Document> adds;
+
     private boolean add = false;
 
-    private boolean optimize = false;
+    private boolean merge = false;
+
+    private int maxNumSegments;
+
+    private boolean expungeDeletes;
+
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
 
     public static IndexWriteAction addAction(IndexWriteExecutor executor, Document doc) {
         IndexWriteAction a = new IndexWriteAction(executor);
@@ -59,9 +74,29 @@ public class IndexWriteAction implements Runnable {
         return a;
     }
 
-    public static IndexWriteAction optimizeAction(IndexWriteExecutor executor) {
+    public static IndexWriteAction bulkAction(IndexWriteExecutor executor, Map<Term, Document> updates,
+        Collection<Document> adds) {
+        IndexWriteAction a = new IndexWriteAction(executor);
+        a.updates = updates;
+        a.adds = adds;
+        return a;
+    }
+
+    /**
+     * Creates an action that requests segment merges. The merges are only registered and run in the background
+     * threads of the merge scheduler, so the action doesn't block following writes.
+     * 
+     * @param executor the executor
+     * @param maxNumSegments the maximum number of segments after merging, or <code>0</code> to skip
+     * @param expungeDeletes <code>true</code> to merge segments with deleted documents
+     * @return the action
+     */
+    public static IndexWriteAction mergeAction(IndexWriteExecutor executor, int maxNumSegments,
+        boolean expungeDeletes) {
         IndexWriteAction a = new IndexWriteAction(executor);
-        a.optimize = true;
+        a.merge = true;
+        a.maxNumSegments = maxNumSegments;
+        a.expungeDeletes = expungeDeletes;
         return a;
     }
 
@@ -69,6 +104,68 @@ public class IndexWriteAction implements Runnable {
         this.executor = executor;
     }
 
+    /**
+     * Returns the completion handle of this action. The future completes after the
+     * changes of this action are committed or exceptionally if the action fails.
+     * 
+     * @return the completion handle
+     */
+    public CompletableFuture<Void> completion() {
+        return completion;
+    }
+
+    /**
+     * Returns the id terms changed by this action.
+     * 
+     * @return the id terms
+     */
+    Collection<Term> terms() {
+        if (term != null) {
+            return Collections.singleton(term);
+        }
+        return updates != null ? updates.keySet() : Collections.emptySet();
+    }
+
+    /**
+     * Passes all documents of this action with their id term, or <code>null</code> for documents to add,
+     * to given consumer.
+     * 
+     * @param consumer the consumer
+     */
+    void forEachDocument(BiConsumer<Term, Document> consumer) {
+        if (doc != null) {
+            consumer.accept(add ? null : term, doc);
+        }
+        if (updates != null) {
+            updates.forEach(consumer);
+        }
+        if (adds != null) {
+            adds.forEach(d -> consumer.accept(null, d));
+        }
+    }
+
+    /**
+     * Returns the number of documents written by this action.
+     * 
+     * @return the number of documents
+     */
+    int size() {
+        if (doc != null) {
+            return 1;
+        }
+        return (updates != null ? updates.size() : 0) + (adds != null ? adds.size() : 0);
+    }
+
+    /**
+     * Returns <code>true</code> if this action updates a single document by its id term and can
+     * replace an older queued update of the same id term.
+     * 
+     * @return <code>true</code> if the action can replace a older one
+     */
+    boolean isSingleUpdate() {
+        return term != null && doc != null;
+    }
+
     /* (non-Javadoc)
      * @see java.lang.Runnable#run()
      */
@@ -77,13 +174,16 @@ public class IndexWriteAction implements Runnable {
         try {
             if (add) {
                 addDocument();
-            } else if (optimize) {
-                optimize();
+            } else if (merge) {
+                merge();
+            } else if (updates != null || adds != null) {
+                bulk();
             } else {
                 updateDocument();
             }
         } catch (Exception e) {
             LOGGER.error("Error while writing Index ", e);
+            completion.completeExceptionally(e);
         }
     }
 
@@ -92,7 +192,7 @@ public class IndexWriteAction implements Runnable {
             LOGGER.debug("add Document:" + toString());
         }
         executor.getIndexWriter().addDocument(doc);
-        executor.getIndexWriter().commit();
+        executor.changed();
         LOGGER.debug("adding done.");
     }
 
@@ -100,18 +200,49 @@ public class IndexWriteAction implements Runnable {
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("update Document:" + toString());
         }
+        if (executor.isUnchanged(term, doc)) {
+            LOGGER.debug("skip unchanged Document.");
+            executor.skipped();
+            return;
+        }
         executor.getIndexWriter().updateDocument(term, doc);
-        executor.getIndexWriter().commit();
+        executor.written(term, doc);
+        executor.changed();
         LOGGER.debug("updating done.");
     }
 
-    private void optimize() throws IOException {
-        LOGGER.debug("Optimize index...");
-        executor.getIndexWriter().forceMerge(1, true);
-        executor.getIndexWriter().forceMergeDeletes(true);
-        executor.getIndexWriter().flush();
-        executor.getIndexWriter().deleteUnusedFiles();
-        executor.getIndexWriter().commit();
-        LOGGER.debug("optimizing done.");
+    private void bulk() throws IOException {
+        int numUpdates = updates != null ? updates.size() : 0;
+        int numAdds = adds != null ? adds.size() : 0;
+        LOGGER.debug("bulk update {} and add {} Documents", numUpdates, numAdds);
+        int skipped = 0;
+        if (updates != null) {
+            for (Map.Entry<Term, Document> e : updates.entrySet()) {
+                if (executor.isUnchanged(e.getKey(), e.getValue())) {
+                    executor.skipped();
+                    skipped++;
+                    continue;
+                }
+                executor.getIndexWriter().updateDocument(e.getKey(), e.getValue());
+                executor.written(e.getKey(), e.getValue());
+            }
+        }
+        if (adds != null && !adds.isEmpty()) {
+            executor.getIndexWriter().addDocuments(adds);
+        }
+        executor.changed(numUpdates + numAdds - skipped);
+        LOGGER.debug("bulk done, skipped {} unchanged Documents.", skipped);
+    }
+
+    private void merge() throws IOException {
+        LOGGER.debug("Merge index to {} segments (expunge deletes: {})...", maxNumSegments, expungeDeletes);
+        if (maxNumSegments > 0) {
+            executor.getIndexWriter().forceMerge(maxNumSegments, false);
+        }
+        if (expungeDeletes) {
+            executor.getIndexWriter().forceMergeDeletes(false);
+        }
+        completion.complete(null);
+        LOGGER.debug("merges registered.");
     }
 }
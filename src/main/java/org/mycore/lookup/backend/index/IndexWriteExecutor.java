@@ -20,24 +20,43 @@
 package org.mycore.lookup.backend.index;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexCommit;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.KeepOnlyLastCommitDeletionPolicy;
+import org.apache.lucene.index.MergePolicy.OneMerge;
+import org.apache.lucene.index.SnapshotDeletionPolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
+import org.mycore.lookup.backend.index.codec.DocumentCodec;
 import org.mycore.lookup.common.config.Configuration;
 
 /**
@@ -58,46 +77,413 @@ public class IndexWriteExecutor extends ThreadPoolExecutor {
         }
     };
 
-    private boolean writerClosed, closeWriterEarly;
+    private volatile boolean writerClosed;
 
-    private IndexWriter indexWriter;
+    private boolean closeWriterEarly, keepWriterOpen, groupCommit, skipUnchanged;
+
+    private volatile IndexWriter indexWriter;
 
     private Directory indexDir;
 
+    private Analyzer analyzer;
+
+    private String shardPrefix;
+
+    private final SnapshotDeletionPolicy snapshotPolicy = new SnapshotDeletionPolicy(
+        new KeepOnlyLastCommitDeletionPolicy());
+
     private ScheduledFuture<?> delayedFuture;
 
+    private final Object delayedFutureLock = new Object();
+
     private int maxIndexWriteActions;
 
+    private int commitBatchSize;
+
+    private long commitInterval;
+
+    private final AtomicInteger pendingChanges = new AtomicInteger(0);
+
+    private volatile long firstPendingChange;
+
+    private final AtomicLong commitCount = new AtomicLong(0);
+
+    private final AtomicLong committedChanges = new AtomicLong(0);
+
+    private final AtomicLong rejectedCount = new AtomicLong(0);
+
+    private final AtomicLong skippedCount = new AtomicLong(0);
+
+    private final Object commitLock = new Object();
+
+    private final Object hashLock = new Object();
+
+    private Map<Term, Long> writtenHashes = new HashMap<>();
+
+    private Map<Term, Long> committedHashes = Collections.emptyMap();
+
+    private Function<Term, Long> contentHashLookup = term -> null;
+
+    private final AtomicLong mergeCount = new AtomicLong(0);
+
+    private final AtomicLong mergedDocs = new AtomicLong(0);
+
+    private final AtomicLong mergeTime = new AtomicLong(0);
+
     private ReadWriteLock indexCloserLock = new ReentrantReadWriteLock(true);
 
+    private final List<Runnable> commitListeners = new CopyOnWriteArrayList<>();
+
+    private List<IndexWriteAction> uncommittedActions = new ArrayList<>();
+
     private ThreadLocal<Lock> writeAccess = ThreadLocal.withInitial(() -> indexCloserLock.readLock());
 
-    private static IndexWriter getWriter(Directory indexDir) throws Exception {
+    private IndexWriter getWriter(Directory indexDir, Analyzer analyzer) throws Exception {
         IndexWriter w;
-        Analyzer analyzer = CONFIG.getInstanceOf("Index.Analyzer", new StandardAnalyzer());
         IndexWriterConfig config = new IndexWriterConfig(analyzer);
         config.setMaxBufferedDocs(2000);
+        // the same policy is used by every writer, so that snapshots survive the reopening of the writer
+        config.setIndexDeletionPolicy(snapshotPolicy);
+
+        TieredMergePolicy mergePolicy = new TieredMergePolicy();
+        mergePolicy.setSegmentsPerTier(getMergeSetting("SegmentsPerTier", 10));
+        mergePolicy.setMaxMergedSegmentMB(getMergeSetting("MaxMergedSegmentMB", 5 * 1024));
+        mergePolicy.setForceMergeDeletesPctAllowed(getMergeSetting("ForceMergeDeletesPctAllowed", 10));
+        config.setMergePolicy(mergePolicy);
+
+        ConcurrentMergeScheduler mergeScheduler = new ConcurrentMergeScheduler() {
+            @Override
+            protected void doMerge(IndexWriter writer, OneMerge merge) throws IOException {
+                long startTime = System.currentTimeMillis();
+                super.doMerge(writer, merge);
+                mergeCount.incrementAndGet();
+                mergedDocs.addAndGet(merge.totalMaxDoc);
+                mergeTime.addAndGet(System.currentTimeMillis() - startTime);
+            }
+        };
+        int mergeThreads = (int) getMergeSetting("MergeThreads",
+            ConcurrentMergeScheduler.AUTO_DETECT_MERGES_AND_THREADS);
+        if (mergeThreads != ConcurrentMergeScheduler.AUTO_DETECT_MERGES_AND_THREADS) {
+            mergeScheduler.setMaxMergesAndThreads(mergeThreads + 5, mergeThreads);
+        }
+        config.setMergeScheduler(mergeScheduler);
+
         w = new IndexWriter(indexDir, config);
         return w;
     }
 
+    /**
+     * Returns a merge setting of the shard, <code>Index.&lt;Shard&gt;.&lt;name&gt;</code>, falling back to
+     * the global <code>Index.&lt;name&gt;</code>.
+     */
+    private double getMergeSetting(String name, double defaultValue) {
+        double value = CONFIG.getDouble("Index." + name, defaultValue);
+        return shardPrefix != null ? CONFIG.getDouble(shardPrefix + name, value) : value;
+    }
+
     public IndexWriteExecutor(BlockingQueue<Runnable> workQueue, Directory indexDir) {
-        super(1, 1, 0, TimeUnit.SECONDS, workQueue);
+        this(workQueue, indexDir, CONFIG.getInstanceOf("Index.Analyzer", new StandardAnalyzer()));
+    }
+
+    /**
+     * Creates a new {@link IndexWriteExecutor}. If <code>Index.KeepWriterOpen</code> is set, the
+     * {@link IndexWriter} is opened immediately and kept open until {@link #shutdown()}.
+     * 
+     * @param workQueue the work queue
+     * @param indexDir the index directory
+     * @param analyzer the analyzer used for all {@link IndexWriter}s
+     */
+    public IndexWriteExecutor(BlockingQueue<Runnable> workQueue, Directory indexDir, Analyzer analyzer) {
+        this(workQueue, indexDir, analyzer, null);
+    }
+
+    /**
+     * Creates a new {@link IndexWriteExecutor} for a shard of the index. The merge settings are read from
+     * <code>Index.&lt;shardName&gt;.*</code> first and default to the global <code>Index.*</code> settings.
+     * 
+     * @param workQueue the work queue
+     * @param indexDir the index directory
+     * @param analyzer the analyzer used for all {@link IndexWriter}s
+     * @param shardName the name of the shard, or <code>null</code> for the global settings only
+     */
+    public IndexWriteExecutor(BlockingQueue<Runnable> workQueue, Directory indexDir, Analyzer analyzer,
+        String shardName) {
+        super(CONFIG.getInt("Index.WriterThreads", 1), CONFIG.getInt("Index.WriterThreads", 1), 0, TimeUnit.SECONDS,
+            workQueue);
         this.indexDir = indexDir;
+        this.analyzer = analyzer;
+        this.shardPrefix = shardName != null ? "Index." + shardName + "." : null;
         writerClosed = true;
         closeWriterEarly = CONFIG.getBoolean("Index.closeWriterEarly", false);
+        keepWriterOpen = CONFIG.getBoolean("Index.KeepWriterOpen", false);
+        skipUnchanged = CONFIG.getBoolean("Index.SkipUnchanged", true);
         maxIndexWriteActions = CONFIG.getInt("Index.maxIndexWriteActions", 500);
+        groupCommit = CONFIG.getBoolean("Index.GroupCommit", true);
+        commitBatchSize = CONFIG.getInt("Index.CommitBatchSize", 1000);
+        commitInterval = CONFIG.getLong("Index.CommitIntervalMs", 1000);
+        setRejectedExecutionHandler((r, executor) -> {
+            long rejected = rejectedCount.incrementAndGet();
+            if (rejected == 1 || rejected % 1000 == 0) {
+                LOGGER.warn("Rejected index write, {} writes rejected so far.", rejected);
+            }
+            if (r instanceof IndexWriteAction) {
+                ((IndexWriteAction) r).completion()
+                    .completeExceptionally(new RejectedExecutionException("Index write was rejected."));
+            }
+        });
+        // all actions must pass the queue to keep the order per id term
+        prestartAllCoreThreads();
+        if (keepWriterOpen) {
+            openIndexWriter();
+        }
     }
 
     public IndexWriter getIndexWriter() {
         return indexWriter;
     }
 
-    private void openIndexWriter() {
+    /**
+     * @return <code>true</code> if the {@link IndexWriter} is kept open until {@link #shutdown()}
+     */
+    public boolean isKeepWriterOpen() {
+        return keepWriterOpen;
+    }
+
+    /**
+     * Registers a listener that is called after every commit of the {@link IndexWriter}.
+     * 
+     * @param listener the listener
+     */
+    public void addCommitListener(Runnable listener) {
+        commitListeners.add(listener);
+    }
+
+    /**
+     * Sets the lookup of the content hash of the visible document with given id term.
+     * 
+     * @param contentHashLookup the lookup, returns <code>null</code> if there is no document or hash
+     * @see DocumentCodec#contentHash(Document)
+     */
+    public void setContentHashLookup(Function<Term, Long> contentHashLookup) {
+        this.contentHashLookup = contentHashLookup;
+    }
+
+    /**
+     * Checks if given document has the same content hash as the last written or the visible
+     * document with the same id term.
+     * 
+     * @param term the id term
+     * @param doc the document
+     * @return <code>true</code> if the document is unchanged and must not be written
+     */
+    public boolean isUnchanged(Term term, Document doc) {
+        Long hash = DocumentCodec.contentHash(doc);
+        if (!skipUnchanged || term == null || hash == null) {
+            return false;
+        }
+        Long current;
+        synchronized (hashLock) {
+            current = writtenHashes.containsKey(term) ? writtenHashes.get(term) : committedHashes.get(term);
+        }
+        return hash.equals(current != null ? current : contentHashLookup.apply(term));
+    }
+
+    /**
+     * Remembers the content hash of a written document, until the next commit is visible.
+     * 
+     * @param term the id term
+     * @param doc the document
+     */
+    public void written(Term term, Document doc) {
+        if (skipUnchanged && term != null) {
+            synchronized (hashLock) {
+                writtenHashes.put(term, DocumentCodec.contentHash(doc));
+            }
+        }
+    }
+
+    /**
+     * Counts a document skipped by {@link #isUnchanged(Term, Document)}.
+     */
+    public void skipped() {
+        skippedCount.incrementAndGet();
+    }
+
+    /**
+     * @return the number of skipped unchanged documents
+     */
+    public long getSkippedCount() {
+        return skippedCount.get();
+    }
+
+    /**
+     * Marks a uncommitted change of the {@link IndexWriter}. Changes are committed
+     * in batches after the executed action, see {@link #afterExecute(Runnable, Throwable)}.
+     */
+    public void changed() {
+        changed(1);
+    }
+
+    /**
+     * Marks a number of uncommitted changes of the {@link IndexWriter}.
+     * 
+     * @param count the number of changes
+     * @see #changed()
+     */
+    public void changed(int count) {
+        if (count > 0 && pendingChanges.getAndAdd(count) == 0) {
+            firstPendingChange = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Commits all pending changes and notifies the registered commit listeners.
+     * 
+     * @throws IOException if commit fails
+     */
+    public void commit() throws IOException {
+        synchronized (commitLock) {
+            List<IndexWriteAction> actions;
+            synchronized (this) {
+                actions = uncommittedActions;
+                uncommittedActions = new ArrayList<>();
+            }
+            synchronized (hashLock) {
+                committedHashes = writtenHashes;
+                writtenHashes = new HashMap<>();
+            }
+            int batchSize = pendingChanges.getAndSet(0);
+            try {
+                indexWriter.commit();
+            } catch (IOException | RuntimeException e) {
+                synchronized (hashLock) {
+                    committedHashes.forEach(writtenHashes::putIfAbsent);
+                    committedHashes = Collections.emptyMap();
+                }
+                actions.forEach(a -> a.completion().completeExceptionally(e));
+                throw e;
+            }
+            long commits = commitCount.incrementAndGet();
+            long changes = committedChanges.addAndGet(batchSize);
+            LOGGER.debug("Committed {} changes. ({} commits for {} changes)", batchSize, commits, changes);
+            commitListeners.forEach(Runnable::run);
+            // the listeners made the commit visible
+            synchronized (hashLock) {
+                committedHashes = Collections.emptyMap();
+            }
+            actions.forEach(a -> a.completion().complete(null));
+        }
+    }
+
+    /**
+     * @return the number of commits
+     */
+    public long getCommitCount() {
+        return commitCount.get();
+    }
+
+    /**
+     * @return the number of committed changes
+     */
+    public long getCommittedChanges() {
+        return committedChanges.get();
+    }
+
+    /**
+     * @return the average number of changes per commit
+     */
+    public double getAverageCommitBatchSize() {
+        long commits = commitCount.get();
+        return commits == 0 ? 0 : (double) committedChanges.get() / commits;
+    }
+
+    /**
+     * @return the number of rejected actions
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * @return the number of finished segment merges
+     */
+    public long getMergeCount() {
+        return mergeCount.get();
+    }
+
+    /**
+     * @return the number of documents in finished segment merges
+     */
+    public long getMergedDocs() {
+        return mergedDocs.get();
+    }
+
+    /**
+     * @return the time spent in segment merges in milliseconds
+     */
+    public long getMergeTime() {
+        return mergeTime.get();
+    }
+
+    /**
+     * Pins the last commit, so that its files aren't deleted by following commits or merges until the
+     * snapshot is released with {@link #releaseSnapshot(IndexCommit)}. The writes continue meanwhile.
+     * 
+     * @return the pinned commit
+     * @throws IOException if the snapshot couldn't taken
+     */
+    public IndexCommit snapshot() throws IOException {
+        Lock lock = writeAccess.get();
+        lock.lock();
+        try {
+            // the deletion policy knows the commits only after a writer was opened
+            if (writerClosed) {
+                openIndexWriter();
+                if (!keepWriterOpen) {
+                    scheduleDelayedIndexCloser();
+                }
+            }
+            return snapshotPolicy.snapshot();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases a commit pinned by {@link #snapshot()}.
+     * 
+     * @param commit the commit
+     * @throws IOException if the snapshot couldn't released
+     */
+    public void releaseSnapshot(IndexCommit commit) throws IOException {
+        snapshotPolicy.release(commit);
+        IndexWriter writer = indexWriter;
+        if (writer != null) {
+            try {
+                writer.deleteUnusedFiles();
+            } catch (AlreadyClosedException e) {
+                LOGGER.debug("IndexWriter was closed, unused files are deleted by the next one.");
+            }
+        }
+    }
+
+    private synchronized boolean hasUncommittedChanges() {
+        return pendingChanges.get() > 0 || !uncommittedActions.isEmpty();
+    }
+
+    private boolean needsCommit() {
+        return hasUncommittedChanges() && (!groupCommit || pendingChanges.get() >= commitBatchSize
+            || getQueue().isEmpty() || System.currentTimeMillis() - firstPendingChange >= commitInterval);
+    }
+
+    private synchronized void openIndexWriter() {
+        if (!writerClosed) {
+            return;
+        }
         try {
             LOGGER.debug("Opening Lucene index for writing.");
             if (indexWriter == null) {
-                indexWriter = getWriter(indexDir);
+                indexWriter = getWriter(indexDir, analyzer);
             }
         } catch (Exception e) {
             LOGGER.warn("Error while reopening IndexWriter.", e);
@@ -112,6 +498,9 @@ public class IndexWriteExecutor extends ThreadPoolExecutor {
             writerLock.lock();
             if (indexWriter != null) {
                 LOGGER.debug("Writing Lucene index changes to disk.");
+                if (hasUncommittedChanges()) {
+                    commit();
+                }
                 indexWriter.close();
             }
         } catch (IOException e) {
@@ -126,8 +515,22 @@ public class IndexWriteExecutor extends ThreadPoolExecutor {
     }
 
     private void cancelDelayedIndexCloser() {
-        if (delayedFuture != null && !delayedFuture.isDone()) {
-            delayedFuture.cancel(false);
+        synchronized (delayedFutureLock) {
+            if (delayedFuture != null && !delayedFuture.isDone()) {
+                delayedFuture.cancel(false);
+            }
+        }
+    }
+
+    private boolean scheduleDelayedIndexCloser() {
+        synchronized (delayedFutureLock) {
+            cancelDelayedIndexCloser();
+            try {
+                delayedFuture = scheduler.schedule(delayedCloser, 2, TimeUnit.SECONDS);
+                return true;
+            } catch (RejectedExecutionException e) {
+                return false;
+            }
         }
     }
 
@@ -149,18 +552,32 @@ public class IndexWriteExecutor extends ThreadPoolExecutor {
      */
     @Override
     protected void afterExecute(Runnable r, Throwable t) {
+        if (getQueue() instanceof IndexWriteQueue) {
+            ((IndexWriteQueue) getQueue()).release(r);
+        }
         super.afterExecute(r, t);
-        writeAccess.get().unlock();
+        if (r instanceof IndexWriteAction && !((IndexWriteAction) r).completion().isDone()) {
+            synchronized (this) {
+                uncommittedActions.add((IndexWriteAction) r);
+            }
+        }
+        try {
+            if (needsCommit()) {
+                commit();
+            }
+        } catch (IOException e) {
+            LOGGER.error("Error while committing Index ", e);
+        } finally {
+            writeAccess.get().unlock();
+        }
+        if (keepWriterOpen) {
+            return;
+        }
         if (closeWriterEarly || getCompletedTaskCount() % maxIndexWriteActions == 0) {
             closeIndexWriter();
-        } else {
-            cancelDelayedIndexCloser();
-            try {
-                delayedFuture = scheduler.schedule(delayedCloser, 2, TimeUnit.SECONDS);
-            } catch (RejectedExecutionException e) {
-                LOGGER.warn("Cannot schedule delayed IndexWriter closer. Closing IndexWriter now.");
-                closeIndexWriter();
-            }
+        } else if (!scheduleDelayedIndexCloser()) {
+            LOGGER.warn("Cannot schedule delayed IndexWriter closer. Closing IndexWriter now.");
+            closeIndexWriter();
         }
     }
 
@@ -177,6 +594,16 @@ public class IndexWriteExecutor extends ThreadPoolExecutor {
             LOGGER.warn("Error while closing DelayedIndexWriterCloser", e);
         }
         super.shutdown();
+        // queued actions reopen the writer, it's closed after the last one
+        try {
+            while (!awaitTermination(10, TimeUnit.SECONDS)) {
+                LOGGER.info("Processed {} of {} modification requests, still working...", getCompletedTaskCount(),
+                    getTaskCount());
+            }
+        } catch (InterruptedException e) {
+            LOGGER.warn("Interrupted while waiting for queued modification requests.", e);
+            Thread.currentThread().interrupt();
+        }
         closeIndexWriter();
     }
 
@@ -0,0 +1,531 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See http://www.mycore.de/ for details.
+ *
+ * This program is free software; you can use it, redistribute it
+ * and / or modify it under the terms of the GNU General Public License
+ * (GPL) as published by the Free Software Foundation; either version 2
+ * of the License or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program, in a file called gpl.txt or license.txt.
+ * If not, write to the Free Software Foundation Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA  02111-1307 USA
+ */
+package org.mycore.lookup.backend.index;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.lucene.index.Term;
+
+/**
+ * A {@link BlockingQueue} for the {@link IndexWriteExecutor}. An {@link IndexWriteAction} is only handed
+ * out if no earlier action for one of its id terms is still queued before it or in progress, so that the order of
+ * changes per id term is kept with multiple writer threads. Finished actions must be {@link #release(Runnable)
+ * released}.
+ * <p>
+ * Queued single document updates are keyed by their id term. A newer update of the same id term replaces the
+ * queued one, which completes together with its replacement.
+ * <p>
+ * The queue can be bounded by the number of queued documents. The {@link OverflowPolicy} decides what
+ * happens if a action doesn't fit into a full queue.
+ */
+public class IndexWriteQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    /**
+     * The behavior if a action is offered to a full queue.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Blocks the producer until the action fits into the queue.
+         */
+        BLOCK,
+
+        /**
+         * Replaces a queued update of the same id term, otherwise blocks the producer.
+         */
+        COALESCE,
+
+        /**
+         * Rejects the action.
+         */
+        SHED
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition available = lock.newCondition();
+
+    private final Condition notFull = lock.newCondition();
+
+    private final LinkedHashSet<Runnable> queue = new LinkedHashSet<>();
+
+    private final Map<Term, IndexWriteAction> queuedUpdates = new HashMap<>();
+
+    private final Set<Term> inProgress = new HashSet<>();
+
+    private final int capacity;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final boolean coalesceWrites;
+
+    private int queuedDocs;
+
+    private final AtomicLong enqueued = new AtomicLong(0);
+
+    private final AtomicLong enqueueTime = new AtomicLong(0);
+
+    private final AtomicLong maxEnqueueTime = new AtomicLong(0);
+
+    private final AtomicLong coalesced = new AtomicLong(0);
+
+    /**
+     * Creates a unbounded queue.
+     */
+    public IndexWriteQueue() {
+        this(Integer.MAX_VALUE, OverflowPolicy.BLOCK, true);
+    }
+
+    /**
+     * Creates a queue bounded to given number of documents.
+     * 
+     * @param capacity the maximum number of queued documents
+     * @param overflowPolicy the behavior if the queue is full
+     * @param coalesceWrites <code>true</code> if a queued update is always replaced by a newer one of the same id
+     *  term, otherwise only on a full queue with {@link OverflowPolicy#COALESCE}
+     */
+    public IndexWriteQueue(int capacity, OverflowPolicy overflowPolicy, boolean coalesceWrites) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be greater than 0.");
+        }
+        this.capacity = capacity;
+        this.overflowPolicy = Objects.requireNonNull(overflowPolicy);
+        this.coalesceWrites = coalesceWrites;
+    }
+
+    private static Collection<Term> terms(Runnable r) {
+        return r instanceof IndexWriteAction ? ((IndexWriteAction) r).terms() : Collections.emptySet();
+    }
+
+    private static int size(Runnable r) {
+        return r instanceof IndexWriteAction ? ((IndexWriteAction) r).size() : 0;
+    }
+
+    private static Term singleUpdateTerm(Runnable r) {
+        return r instanceof IndexWriteAction && ((IndexWriteAction) r).isSingleUpdate()
+            ? ((IndexWriteAction) r).terms().iterator().next()
+            : null;
+    }
+
+    /**
+     * @return the number of queued documents
+     */
+    public int getQueuedDocs() {
+        lock.lock();
+        try {
+            return queuedDocs;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of enqueued actions
+     */
+    public long getEnqueuedCount() {
+        return enqueued.get();
+    }
+
+    /**
+     * @return the average time in milliseconds a producer waits to enqueue a action
+     */
+    public double getAverageEnqueueTime() {
+        long count = enqueued.get();
+        return count == 0 ? 0 : enqueueTime.get() / 1000000d / count;
+    }
+
+    /**
+     * @return the maximum time in milliseconds a producer waits to enqueue a action
+     */
+    public double getMaxEnqueueTime() {
+        return maxEnqueueTime.get() / 1000000d;
+    }
+
+    /**
+     * @return the number of queued actions replaced by newer ones
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    private boolean fits(Runnable r) {
+        // a empty queue takes every action, even if it's greater than the capacity
+        return queuedDocs == 0 || queuedDocs + size(r) <= capacity;
+    }
+
+    private boolean coalesce(Runnable r) {
+        Term term = singleUpdateTerm(r);
+        IndexWriteAction queued = term != null ? queuedUpdates.get(term) : null;
+        if (queued == null) {
+            return false;
+        }
+
+        // the newer action is appended, so it stays behind all other queued actions of the id term
+        queue.remove(queued);
+        dequeued(queued);
+        ((IndexWriteAction) r).completion().whenComplete((v, e) -> {
+            if (e != null) {
+                queued.completion().completeExceptionally(e);
+            } else {
+                queued.completion().complete(v);
+            }
+        });
+        coalesced.incrementAndGet();
+        return true;
+    }
+
+    private void enqueue(Runnable r, long startTime) {
+        queue.add(r);
+        queuedDocs += size(r);
+        Term term = singleUpdateTerm(r);
+        if (term != null) {
+            queuedUpdates.put(term, (IndexWriteAction) r);
+        }
+        available.signal();
+
+        long time = System.nanoTime() - startTime;
+        enqueued.incrementAndGet();
+        enqueueTime.addAndGet(time);
+        maxEnqueueTime.accumulateAndGet(time, Math::max);
+    }
+
+    private Runnable dequeued(Runnable r) {
+        if (r != null) {
+            queuedDocs -= size(r);
+            Term term = singleUpdateTerm(r);
+            if (term != null) {
+                queuedUpdates.remove(term, r);
+            }
+            notFull.signalAll();
+        }
+        return r;
+    }
+
+    /**
+     * Releases the id terms of a finished action, so that following actions for the same terms can be taken.
+     * 
+     * @param r the finished action
+     */
+    public void release(Runnable r) {
+        Collection<Term> terms = terms(r);
+        if (terms.isEmpty()) {
+            return;
+        }
+        lock.lock();
+        try {
+            inProgress.removeAll(terms);
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Runnable next() {
+        Set<Term> blocked = inProgress.isEmpty() ? null : new HashSet<>(inProgress);
+        for (Iterator<Runnable> it = queue.iterator(); it.hasNext();) {
+            Runnable r = it.next();
+            Collection<Term> terms = terms(r);
+            if (blocked == null || terms.stream().noneMatch(blocked::contains)) {
+                it.remove();
+                inProgress.addAll(terms);
+                return dequeued(r);
+            }
+            blocked.addAll(terms);
+        }
+        return null;
+    }
+
+    /**
+     * Replaces a queued update of the same id term, if coalescing is enabled or needed.
+     * 
+     * @return <code>true</code> if the action fits into the queue
+     */
+    private boolean admit(Runnable r) {
+        if (coalesceWrites || overflowPolicy == OverflowPolicy.COALESCE && !fits(r)) {
+            coalesce(r);
+        }
+        return fits(r);
+    }
+
+    /**
+     * Enqueues the action, if it fits into the queue. Depending on the {@link OverflowPolicy} a
+     * full queue blocks the producer, replaces a queued update of the same id term or rejects the action.
+     * 
+     * @see java.util.Queue#offer(java.lang.Object)
+     */
+    @Override
+    public boolean offer(Runnable r) {
+        Objects.requireNonNull(r);
+        long startTime = System.nanoTime();
+        lock.lock();
+        try {
+            if (!admit(r)) {
+                if (overflowPolicy == OverflowPolicy.SHED) {
+                    return false;
+                }
+                while (!fits(r)) {
+                    notFull.awaitUninterruptibly();
+                }
+            }
+            enqueue(r, startTime);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Enqueues the action like {@link #offer(Runnable)}, but waits at most the given time for the action to
+     * fit into a full queue.
+     * 
+     * @see java.util.concurrent.BlockingQueue#offer(java.lang.Object, long, java.util.concurrent.TimeUnit)
+     */
+    @Override
+    public boolean offer(Runnable r, long timeout, TimeUnit unit) throws InterruptedException {
+        Objects.requireNonNull(r);
+        long startTime = System.nanoTime();
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            if (!admit(r)) {
+                if (overflowPolicy == OverflowPolicy.SHED) {
+                    return false;
+                }
+                while (!fits(r)) {
+                    if (nanos <= 0) {
+                        return false;
+                    }
+                    nanos = notFull.awaitNanos(nanos);
+                }
+            }
+            enqueue(r, startTime);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Enqueues the action and waits until it fits into the queue, also with {@link OverflowPolicy#SHED}.
+     * 
+     * @see java.util.concurrent.BlockingQueue#put(java.lang.Object)
+     */
+    @Override
+    public void put(Runnable r) throws InterruptedException {
+        Objects.requireNonNull(r);
+        long startTime = System.nanoTime();
+        lock.lockInterruptibly();
+        try {
+            if (!admit(r)) {
+                while (!fits(r)) {
+                    notFull.await();
+                }
+            }
+            enqueue(r, startTime);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.Queue#poll()
+     */
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return next();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.BlockingQueue#poll(long, java.util.concurrent.TimeUnit)
+     */
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            Runnable r;
+            while ((r = next()) == null) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = available.awaitNanos(nanos);
+            }
+            return r;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.BlockingQueue#take()
+     */
+    @Override
+    public Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            Runnable r;
+            while ((r = next()) == null) {
+                available.await();
+            }
+            return r;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.Queue#peek()
+     */
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            return queue.isEmpty() ? null : queue.iterator().next();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.AbstractCollection#remove(java.lang.Object)
+     */
+    @Override
+    public boolean remove(Object o) {
+        lock.lock();
+        try {
+            if (queue.remove(o)) {
+                dequeued((Runnable) o);
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.AbstractCollection#size()
+     */
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.BlockingQueue#remainingCapacity()
+     */
+    @Override
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return capacity - queuedDocs;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.BlockingQueue#drainTo(java.util.Collection)
+     */
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.BlockingQueue#drainTo(java.util.Collection, int)
+     */
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        lock.lock();
+        try {
+            int n = 0;
+            for (Iterator<Runnable> it = queue.iterator(); n < maxElements && it.hasNext(); n++) {
+                Runnable r = it.next();
+                it.remove();
+                c.add(dequeued(r));
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.AbstractCollection#iterator()
+     */
+    @Override
+    public Iterator<Runnable> iterator() {
+        List<Runnable> snapshot;
+        lock.lock();
+        try {
+            snapshot = new ArrayList<>(queue);
+        } finally {
+            lock.unlock();
+        }
+
+        Iterator<Runnable> it = snapshot.iterator();
+        return new Iterator<Runnable>() {
+            private Runnable last;
+
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public Runnable next() {
+                last = it.next();
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                it.remove();
+                IndexWriteQueue.this.remove(last);
+            }
+        };
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See http://www.mycore.de/ for details.
+ *
+ * This program is free software; you can use it, redistribute it
+ * and / or modify it under the terms of the GNU General Public License
+ * (GPL) as published by the Free Software Foundation; either version 2
+ * of the License or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program, in a file called gpl.txt or license.txt.
+ * If not, write to the Free Software Foundation Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA  02111-1307 USA
+ */
+package org.mycore.lookup.backend.index;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.codec.language.ColognePhonetic;
+import org.apache.commons.codec.language.DoubleMetaphone;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.DelegatingAnalyzerWrapper;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.mycore.lookup.backend.index.codec.DocumentCodec;
+
+/**
+ * Analyzes the phonetic fields of the entities, see
+ * {@link org.mycore.lookup.backend.index.annotation.Field#phonetic()}. Every token is replaced by its
+ * K&ouml;lner Phonetik code and its primary and alternate Double Metaphone codes at the same position, so that
+ * spelling variants of historical names like "Meier", "Meyer" and "Mayr" share a term.
+ */
+class PhoneticAnalyzer extends Analyzer {
+
+    private static final ColognePhonetic COLOGNE_PHONETIC = new ColognePhonetic();
+
+    private static final DoubleMetaphone DOUBLE_METAPHONE = new DoubleMetaphone();
+
+    /**
+     * Returns an analyzer using this analyzer for the phonetic fields and given analyzer for all other fields.
+     * 
+     * @param analyzer the analyzer of the other fields
+     * @return the wrapped analyzer
+     */
+    Analyzer wrap(Analyzer analyzer) {
+        return new DelegatingAnalyzerWrapper(PER_FIELD_REUSE_STRATEGY) {
+            @Override
+            protected Analyzer getWrappedAnalyzer(String fieldName) {
+                return fieldName.endsWith(DocumentCodec.PHONETIC_FIELD_SUFFIX) ? PhoneticAnalyzer.this : analyzer;
+            }
+        };
+    }
+
+    /**
+     * Builds the query matching all entities with a phonetic variant of each of the tokens of the term.
+     * 
+     * @param field the phonetic field
+     * @param term the term
+     * @return the query
+     */
+    Query query(String field, String term) {
+        List<BooleanQuery.Builder> tokens = new ArrayList<>();
+        try (TokenStream ts = tokenStream(field, term)) {
+            CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+            PositionIncrementAttribute posIncAtt = ts.addAttribute(PositionIncrementAttribute.class);
+            ts.reset();
+            while (ts.incrementToken()) {
+                if (tokens.isEmpty() || posIncAtt.getPositionIncrement() > 0) {
+                    tokens.add(new BooleanQuery.Builder());
+                }
+                tokens.get(tokens.size() - 1).add(new TermQuery(new Term(field, termAtt.toString())), Occur.SHOULD);
+            }
+            ts.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (tokens.isEmpty()) {
+            return new MatchNoDocsQuery("No phonetic code for " + term + ".");
+        }
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        tokens.forEach(token -> builder.add(token.build(), Occur.MUST));
+        return builder.build();
+    }
+
+    @Override
+    protected TokenStreamComponents createComponents(String fieldName) {
+        Tokenizer source = new StandardTokenizer();
+        return new TokenStreamComponents(source, new PhoneticFilter(new LowerCaseFilter(source)));
+    }
+
+    @Override
+    protected TokenStream normalize(String fieldName, TokenStream in) {
+        return new LowerCaseFilter(in);
+    }
+
+    private static Set<String> encode(String token) {
+        Set<String> codes = new LinkedHashSet<>();
+        codes.add(COLOGNE_PHONETIC.encode(token));
+        codes.add(DOUBLE_METAPHONE.doubleMetaphone(token));
+        codes.add(DOUBLE_METAPHONE.doubleMetaphone(token, true));
+        codes.remove(null);
+        codes.remove("");
+        return codes;
+    }
+
+    /**
+     * Replaces each token with its phonetic codes, tokens without any code are removed.
+     */
+    private static final class PhoneticFilter extends TokenFilter {
+
+        private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+
+        private final PositionIncrementAttribute posIncAtt = addAttribute(PositionIncrementAttribute.class);
+
+        private final Deque<String> pending = new ArrayDeque<>();
+
+        private State state;
+
+        PhoneticFilter(TokenStream input) {
+            super(input);
+        }
+
+        @Override
+        public boolean incrementToken() throws IOException {
+            if (!pending.isEmpty()) {
+                restoreState(state);
+                termAtt.setEmpty().append(pending.poll());
+                posIncAtt.setPositionIncrement(0);
+                return true;
+            }
+            int skippedPositions = 0;
+            while (input.incrementToken()) {
+                Set<String> codes = encode(termAtt.toString());
+                if (codes.isEmpty()) {
+                    skippedPositions += posIncAtt.getPositionIncrement();
+                    continue;
+                }
+                pending.addAll(codes);
+                termAtt.setEmpty().append(pending.poll());
+                posIncAtt.setPositionIncrement(posIncAtt.getPositionIncrement() + skippedPositions);
+                state = captureState();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void reset() throws IOException {
+            super.reset();
+            pending.clear();
+            state = null;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See http://www.mycore.de/ for details.
+ *
+ * This program is free software; you can use it, redistribute it
+ * and / or modify it under the terms of the GNU General Public License
+ * (GPL) as published by the Free Software Foundation; either version 2
+ * of the License or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program, in a file called gpl.txt or license.txt.
+ * If not, write to the Free Software Foundation Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA  02111-1307 USA
+ */
+package org.mycore.lookup.backend.index;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.ScoreDoc;
+
+/**
+ * The position after the last hit of a result page. It holds the version of the searched
+ * {@link org.apache.lucene.index.DirectoryReader}, so that following pages are searched on the same point-in-time
+ * view of the index, and the last {@link ScoreDoc} for
+ * {@link org.apache.lucene.search.IndexSearcher#searchAfter(ScoreDoc, org.apache.lucene.search.Query, int)}.
+ * For sorted searches the last hit is a {@link FieldDoc} and its sort values are kept too.
+ */
+class SearchCursor {
+
+    private static final String SEPARATOR = ":";
+
+    private final long version;
+
+    private final ScoreDoc after;
+
+    SearchCursor(long version, ScoreDoc after) {
+        this.version = version;
+        this.after = after;
+    }
+
+    /**
+     * Parses a cursor token created by {@link #toString()}.
+     * 
+     * @param token the cursor token
+     * @return the cursor
+     * @throws IllegalArgumentException if the token is no valid cursor
+     */
+    static SearchCursor parse(String token) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8)
+                .split(SEPARATOR);
+            if (parts.length < 3) {
+                throw new IllegalArgumentException("Invalid cursor " + token + ".");
+            }
+            int doc = Integer.parseInt(parts[1]);
+            float score = Float.intBitsToFloat(Integer.parseInt(parts[2]));
+            if (parts.length == 3) {
+                return new SearchCursor(Long.parseLong(parts[0]), new ScoreDoc(doc, score));
+            }
+            Object[] fields = new Object[parts.length - 3];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = parseSortValue(parts[i + 3]);
+            }
+            return new SearchCursor(Long.parseLong(parts[0]), new FieldDoc(doc, score, fields));
+        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor " + token + ".", e);
+        }
+    }
+
+    private static Object parseSortValue(String value) {
+        switch (value.charAt(0)) {
+            case 'i':
+                return Integer.valueOf(value.substring(1));
+            case 'l':
+                return Long.valueOf(value.substring(1));
+            case 'f':
+                return Float.intBitsToFloat(Integer.parseInt(value.substring(1)));
+            default:
+                throw new IllegalArgumentException("Invalid sort value " + value + ".");
+        }
+    }
+
+    private static String formatSortValue(Object value) {
+        if (value instanceof Integer) {
+            return "i" + value;
+        } else if (value instanceof Long) {
+            return "l" + value;
+        } else if (value instanceof Float) {
+            return "f" + Float.floatToIntBits((Float) value);
+        }
+        throw new IllegalStateException("Unsupported sort value " + value + ".");
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    ScoreDoc getAfter() {
+        return after;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder value = new StringBuilder().append(version).append(SEPARATOR).append(after.doc)
+            .append(SEPARATOR).append(Float.floatToIntBits(after.score));
+        if (after instanceof FieldDoc) {
+            for (Object field : ((FieldDoc) after).fields) {
+                value.append(SEPARATOR).append(formatSortValue(field));
+            }
+        }
+        return Base64.getUrlEncoder().withoutPadding()
+            .encodeToString(value.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -57,6 +57,23 @@ public @interface Field {
      */
     boolean store() default false;
 
+    /**
+     * Should the year of a temporal field value additionally indexed as point and doc values field
+     * <code>{name}.year</code> for range queries and sorting. Only applicable to single valued fields.
+     */
+    boolean year() default false;
+
+    /**
+     * Should the field value additionally added to the prefix completion field <code>{type}.completion</code> of
+     * the entity.
+     */
+    boolean complete() default false;
+
+    /**
+     * Should the field value additionally added to the phonetic field <code>{type}.phonetic</code> of the entity.
+     */
+    boolean phonetic() default false;
+
     /**
      * (Optional) Field value adapter.
      */
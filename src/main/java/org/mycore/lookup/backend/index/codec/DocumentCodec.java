@@ -0,0 +1,548 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See http://www.mycore.de/ for details.
+ *
+ * This program is free software; you can use it, redistribute it
+ * and / or modify it under the terms of the GNU General Public License
+ * (GPL) as published by the Free Software Foundation; either version 2
+ * of the License or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program, in a file called gpl.txt or license.txt.
+ * If not, write to the Free Software Foundation Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA  02111-1307 USA
+ */
+package org.mycore.lookup.backend.index.codec;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.FloatPoint;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.util.BytesRef;
+import org.mycore.lookup.backend.index.adapter.FieldAdapter;
+import org.mycore.lookup.backend.index.annotation.Field;
+import org.mycore.lookup.backend.index.annotation.Id;
+import org.mycore.lookup.backend.index.annotation.IdRef;
+import org.mycore.lookup.util.AdapterRegistry;
+import org.mycore.lookup.util.ObjectTools;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * The <code>DocumentCodec</code> maps an entity annotated with {@link Field} and {@link IdRef}
+ * to a Lucene {@link Document} and back.
+ * <p>
+ * The annotated accessors of an entity class are resolved only once into a list of
+ * {@link MethodHandle}s with precomputed and interned field names. Codecs are cached per class,
+ * use {@link #of(Class)} or {@link #of(Document)} to get one.
+ * </p>
+ *
+ * @param <T> the entity type
+ */
+public class DocumentCodec<T> {
+
+    /**
+     * The field holding the entity class name.
+     */
+    public static final String OBJECT_CLASS_FIELD = "objectClass";
+
+    /**
+     * The doc values field holding the hash over all other fields of the document.
+     */
+    public static final String CONTENT_HASH_FIELD = "contentHash";
+
+    /**
+     * The suffix of the point and doc values field holding the year of a temporal field, see {@link Field#year()}.
+     */
+    public static final String YEAR_FIELD_SUFFIX = ".year";
+
+    /**
+     * The suffix of the type name forming the prefix completion field of an entity, see {@link Field#complete()}.
+     */
+    public static final String COMPLETION_FIELD_SUFFIX = ".completion";
+
+    /**
+     * The suffix of the type name forming the phonetic field of an entity, see {@link Field#phonetic()}.
+     */
+    public static final String PHONETIC_FIELD_SUFFIX = ".phonetic";
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final Map<Class<?>, DocumentCodec<?>> CODECS = new ConcurrentHashMap<>();
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final Class<T> type;
+
+    private final String typeName;
+
+    private final MethodHandle constructor;
+
+    private final List<FieldAccessor> fields;
+
+    private final List<FieldAccessor> storedFields;
+
+    private final FieldAccessor idField;
+
+    private final List<RefAccessor> refs;
+
+    private final String completionField;
+
+    private final String phoneticField;
+
+    /**
+     * Returns the codec for given entity class.
+     * 
+     * @param cls the entity class
+     * @return the codec
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> DocumentCodec<T> of(Class<T> cls) {
+        return (DocumentCodec<T>) CODECS.computeIfAbsent(cls, DocumentCodec::new);
+    }
+
+    /**
+     * Returns the codec for the entity class stored in given {@link Document}.
+     * 
+     * @param doc the document
+     * @return the codec
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> DocumentCodec<T> of(Document doc) {
+        String clsName = doc.get(OBJECT_CLASS_FIELD);
+        try {
+            return of((Class<T>) DocumentCodec.class.getClassLoader().loadClass(clsName));
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Couldn't load entity class " + clsName + ".", e);
+        }
+    }
+
+    /**
+     * Returns the codec for given entity.
+     * 
+     * @param obj the entity
+     * @return the codec
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> DocumentCodec<T> of(T obj) {
+        return of((Class<T>) obj.getClass());
+    }
+
+    private DocumentCodec(Class<T> type) {
+        this.type = type;
+        this.typeName = type.getName().intern();
+
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        String fieldPrefix = type.getSimpleName() + ".";
+        this.completionField = completionField(type);
+        this.phoneticField = phoneticField(type);
+
+        try {
+            constructor = lookup.findConstructor(type, MethodType.methodType(void.class))
+                .asType(MethodType.methodType(Object.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalArgumentException("Entity " + type + " needs a public default constructor.", e);
+        }
+
+        fields = Collections.unmodifiableList(Arrays.stream(type.getMethods())
+            .filter(m -> m.isAnnotationPresent(Field.class))
+            .sorted((m1, m2) -> m1.getName().compareTo(m2.getName()))
+            .map(m -> {
+                Field f = m.getAnnotation(Field.class);
+                String name = fieldPrefix + (f.name().isEmpty() ? ObjectTools.getFieldName(m.getName()) : f.name());
+                return new FieldAccessor(name, f, m.isAnnotationPresent(Id.class), getter(lookup, m),
+                    f.store() ? setter(lookup, m) : null, isCollection(m));
+            }).collect(Collectors.toList()));
+
+        storedFields = Collections
+            .unmodifiableList(fields.stream().filter(a -> a.field.store()).collect(Collectors.toList()));
+
+        idField = fields.stream().filter(a -> a.id).findFirst().orElse(null);
+
+        refs = Collections.unmodifiableList(Arrays.stream(type.getMethods())
+            .filter(m -> m.isAnnotationPresent(IdRef.class))
+            .sorted((m1, m2) -> m1.getName().compareTo(m2.getName()))
+            .map(m -> {
+                IdRef ref = m.getAnnotation(IdRef.class);
+                String name = fieldPrefix
+                    + (ref.name().isEmpty() ? ObjectTools.getFieldName(m.getName()) : ref.name());
+                return new RefAccessor(name, getter(lookup, m), setter(lookup, m), isCollection(m));
+            }).collect(Collectors.toList()));
+
+        LOGGER.debug("Compiled codec for {} with {} fields and {} references.", type.getName(), fields.size(),
+            refs.size());
+    }
+
+    private MethodHandle getter(MethodHandles.Lookup lookup, Method m) {
+        Method getter = ObjectTools.getGetter(type, m);
+        try {
+            return lookup.unreflect(getter).asType(GETTER_TYPE);
+        } catch (IllegalAccessException | NullPointerException e) {
+            throw new IllegalArgumentException("No accessible getter for " + m + ".", e);
+        }
+    }
+
+    private MethodHandle setter(MethodHandles.Lookup lookup, Method m) {
+        Method setter = ObjectTools.getSetter(type, m);
+        try {
+            return lookup.unreflect(setter).asType(SETTER_TYPE);
+        } catch (IllegalAccessException | NullPointerException e) {
+            throw new IllegalArgumentException("No accessible setter for " + m + ".", e);
+        }
+    }
+
+    private boolean isCollection(Method m) {
+        return Collection.class.isAssignableFrom(ObjectTools.getGetter(type, m).getReturnType());
+    }
+
+    /**
+     * Returns the name of the prefix completion field of given entity class.
+     * 
+     * @param cls the entity class
+     * @return the field name
+     */
+    public static String completionField(Class<?> cls) {
+        return (cls.getSimpleName() + COMPLETION_FIELD_SUFFIX).intern();
+    }
+
+    /**
+     * Returns the name of the phonetic field of given entity class.
+     * 
+     * @param cls the entity class
+     * @return the field name
+     */
+    public static String phoneticField(Class<?> cls) {
+        return (cls.getSimpleName() + PHONETIC_FIELD_SUFFIX).intern();
+    }
+
+    /**
+     * @return the entity class
+     */
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * Builds the {@link Document} for given entity.
+     * 
+     * @param obj the entity
+     * @return the document
+     */
+    public Document encode(T obj) {
+        Document doc = new Document();
+        doc.add(new StringField(OBJECT_CLASS_FIELD, typeName, Store.YES));
+
+        fields.forEach(a -> a.values(obj).forEach(v -> {
+            Object value = marshal(a.field, v);
+            if (value != null) {
+                LOGGER.debug("set {}=\"{}\"", a.name, value);
+                Optional.ofNullable(buildIndexableField(a.field, a.name, value)).ifPresent(doc::add);
+                if (a.field.complete() && value instanceof String) {
+                    doc.add(new TextField(completionField, (String) value, Store.NO));
+                }
+                if (a.field.phonetic() && value instanceof String) {
+                    doc.add(new TextField(phoneticField, (String) value, Store.NO));
+                }
+            }
+            if (a.field.year()) {
+                year(v).ifPresent(year -> {
+                    LOGGER.debug("set {}{}={}", a.name, YEAR_FIELD_SUFFIX, year);
+                    doc.add(new IntPoint(a.name + YEAR_FIELD_SUFFIX, year));
+                    doc.add(new NumericDocValuesField(a.name + YEAR_FIELD_SUFFIX, year));
+                });
+            }
+        }));
+
+        refs.forEach(r -> r.values(obj).forEach(v -> {
+            String refId = of(v).referenceId(v);
+            if (refId != null) {
+                LOGGER.debug("set ref {}=\"{}\"", r.name, refId);
+                doc.add(new StringField(r.name, refId, Store.YES));
+            }
+        }));
+
+        doc.add(new NumericDocValuesField(CONTENT_HASH_FIELD, hash(doc)));
+
+        return doc;
+    }
+
+    /**
+     * Returns the content hash of a {@link Document} build by {@link #encode(Object)}.
+     * 
+     * @param doc the document
+     * @return the content hash or <code>null</code> if the document has none
+     */
+    public static Long contentHash(Document doc) {
+        IndexableField field = doc.getField(CONTENT_HASH_FIELD);
+        return field != null && field.numericValue() != null ? field.numericValue().longValue() : null;
+    }
+
+    private static long hash(Document doc) {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        for (IndexableField field : doc.getFields()) {
+            hasher.putString(field.name(), StandardCharsets.UTF_8).putByte((byte) 0);
+            if (field.binaryValue() != null) {
+                BytesRef bytes = field.binaryValue();
+                hasher.putBytes(bytes.bytes, bytes.offset, bytes.length);
+            } else if (field.stringValue() != null) {
+                hasher.putString(field.stringValue(), StandardCharsets.UTF_8);
+            }
+            hasher.putByte((byte) 0);
+        }
+        return hasher.hash().asLong();
+    }
+
+    /**
+     * Builds the entity from given {@link Document}.
+     * 
+     * @param doc the document
+     * @param refResolver the function to resolve a reference id, see {@link #referenceId(Object)}
+     * @return the entity
+     */
+    public T decode(Document doc, Function<String, Object> refResolver) {
+        T obj = type.cast(invoke(() -> constructor.invokeExact()));
+
+        storedFields.forEach(a -> {
+            if (a.collection) {
+                List<Object> values = Arrays.stream(doc.getFields(a.name)).map(v -> unmarshal(a.field, v))
+                    .filter(Objects::nonNull).collect(Collectors.toList());
+                LOGGER.debug("get {}=\"{}\"", a.name, values);
+                a.set(obj, values);
+            } else {
+                Object value = unmarshal(a.field, doc.getField(a.name));
+                LOGGER.debug("get {}=\"{}\"", a.name, value);
+                a.set(obj, value);
+            }
+        });
+
+        refs.forEach(r -> {
+            if (r.collection) {
+                List<Object> values = Arrays.stream(doc.getValues(r.name)).map(refResolver)
+                    .filter(Objects::nonNull).collect(Collectors.toList());
+                LOGGER.debug("get ref {}=\"{}\"", r.name, values);
+                r.set(obj, values);
+            } else {
+                Object value = Optional.ofNullable(doc.get(r.name)).map(refResolver).orElse(null);
+                LOGGER.debug("get ref {}=\"{}\"", r.name, value);
+                r.set(obj, value);
+            }
+        });
+
+        return obj;
+    }
+
+    /**
+     * Returns the id {@link Term} of given entity.
+     * 
+     * @param obj the entity
+     * @return the id term or <code>null</code>
+     */
+    public Term idTerm(T obj) {
+        return Optional.ofNullable(idValue(obj)).map(id -> new Term(idField.name, id)).orElse(null);
+    }
+
+    /**
+     * Returns the reference id of given entity in the form <code>{field}:{id}</code>.
+     * 
+     * @param obj the entity
+     * @return the reference id or <code>null</code>
+     */
+    public String referenceId(T obj) {
+        return Optional.ofNullable(idValue(obj)).map(id -> idField.name + ":" + id).orElse(null);
+    }
+
+    /**
+     * Returns all referenced entities of given entity.
+     * 
+     * @param obj the entity
+     * @return the referenced entities
+     */
+    public List<Object> references(T obj) {
+        List<Object> values = new ArrayList<>();
+        refs.forEach(r -> r.values(obj).forEach(values::add));
+        return values.stream().distinct().collect(Collectors.toList());
+    }
+
+    /**
+     * Returns all reference ids stored in given {@link Document}.
+     * 
+     * @param doc the document
+     * @return the reference ids
+     */
+    public List<String> referenceIds(Document doc) {
+        return refs.stream().flatMap(r -> Arrays.stream(doc.getValues(r.name))).collect(Collectors.toList());
+    }
+
+    private String idValue(T obj) {
+        return idField == null ? null
+            : idField.values(obj).stream().map(v -> marshal(idField.field, v)).filter(Objects::nonNull)
+                .map(Object::toString).findFirst().orElse(null);
+    }
+
+    private static IndexableField buildIndexableField(Field a, String name, Object value) {
+        if (value != null && a.index()) {
+            Class<?> valCls = value.getClass();
+            Store store = a.store() ? Store.YES : Store.NO;
+
+            if (String.class.isAssignableFrom(valCls)) {
+                return a.analyze() ? new TextField(name, (String) value, store)
+                    : new StringField(name, (String) value, store);
+            } else if (a.store() && valCls.isPrimitive()) {
+                if (Integer.class.isAssignableFrom(valCls)) {
+                    return new StoredField(name, (int) value);
+                } else if (Long.class.isAssignableFrom(valCls)) {
+                    return new StoredField(name, (long) value);
+                } else if (Double.class.isAssignableFrom(valCls)) {
+                    return new StoredField(name, (double) value);
+                } else if (Float.class.isAssignableFrom(valCls)) {
+                    return new StoredField(name, (float) value);
+                }
+            } else if (valCls.isPrimitive()) {
+                if (Integer.class.isAssignableFrom(valCls)) {
+                    return new IntPoint(name, (int) value);
+                } else if (Long.class.isAssignableFrom(valCls)) {
+                    return new LongPoint(name, (long) value);
+                } else if (Double.class.isAssignableFrom(valCls)) {
+                    return new DoublePoint(name, (double) value);
+                } else if (Float.class.isAssignableFrom(valCls)) {
+                    return new FloatPoint(name, (float) value);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Optional<Integer> year(Object value) {
+        if (value instanceof TemporalAccessor && ((TemporalAccessor) value).isSupported(ChronoField.YEAR)) {
+            return Optional.of(((TemporalAccessor) value).get(ChronoField.YEAR));
+        }
+        return Optional.empty();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object marshal(Field a, Object value) {
+        return value != null ? adapter(a).marshal(value) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object unmarshal(Field a, IndexableField f) {
+        if (f == null) {
+            return null;
+        }
+        Object value = f.numericValue() != null ? f.numericValue() : f.stringValue();
+        return value != null ? adapter(a).unmarshal(value) : null;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static FieldAdapter adapter(Field a) {
+        return AdapterRegistry.instance(a.adapter());
+    }
+
+    private static Object invoke(Invocation invocation) {
+        try {
+            return invocation.invoke();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new UnsupportedOperationException(t);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Invocation {
+        Object invoke() throws Throwable;
+    }
+
+    private abstract static class Accessor {
+
+        final String name;
+
+        final MethodHandle getter;
+
+        final MethodHandle setter;
+
+        final boolean collection;
+
+        Accessor(String name, MethodHandle getter, MethodHandle setter, boolean collection) {
+            this.name = name.intern();
+            this.getter = getter;
+            this.setter = setter;
+            this.collection = collection;
+        }
+
+        Collection<?> values(Object obj) {
+            Object value = invoke(() -> (Object) getter.invokeExact(obj));
+            if (value == null) {
+                return Collections.emptyList();
+            }
+            return collection
+                ? ((Collection<?>) value).stream().filter(Objects::nonNull).collect(Collectors.toList())
+                : Collections.singletonList(value);
+        }
+
+        void set(Object obj, Object value) {
+            invoke(() -> {
+                setter.invokeExact(obj, value);
+                return null;
+            });
+        }
+    }
+
+    private static final class FieldAccessor extends Accessor {
+
+        final Field field;
+
+        final boolean id;
+
+        FieldAccessor(String name, Field field, boolean id, MethodHandle getter, MethodHandle setter,
+            boolean collection) {
+            super(name, getter, setter, collection);
+            this.field = field;
+            this.id = id;
+        }
+    }
+
+    private static final class RefAccessor extends Accessor {
+
+        RefAccessor(String name, MethodHandle getter, MethodHandle setter, boolean collection) {
+            super(name, getter, setter, collection);
+        }
+    }
+}
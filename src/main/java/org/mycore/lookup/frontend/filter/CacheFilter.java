@@ -49,7 +49,10 @@ public class CacheFilter implements ContainerResponseFilter {
 	public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext)
 			throws IOException {
 		Method method = resourceInfo.getResourceMethod();
-		if (method.isAnnotationPresent(CacheMaxAge.class)) {
+		if (responseContext.getHeaders().containsKey(HttpHeaders.CACHE_CONTROL)) {
+			// set by the resource for this response
+			return;
+		} else if (method.isAnnotationPresent(CacheMaxAge.class)) {
 			CacheMaxAge maxAge = method.getAnnotation(CacheMaxAge.class);
 			responseContext.getHeaders().putSingle(HttpHeaders.CACHE_CONTROL,
 					"max-age=" + maxAge.unit().toSeconds(maxAge.time()));
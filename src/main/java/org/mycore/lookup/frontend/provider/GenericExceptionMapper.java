@@ -16,6 +16,7 @@
  */
 package org.mycore.lookup.frontend.provider;
 
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.ext.ExceptionMapper;
 import javax.ws.rs.ext.Provider;
@@ -37,6 +38,13 @@ public class GenericExceptionMapper implements ExceptionMapper<Exception> {
      */
     @Override
     public Response toResponse(Exception exception) {
+        if (exception instanceof WebApplicationException) {
+            Response response = ((WebApplicationException) exception).getResponse();
+            if (response.getStatus() < Response.Status.INTERNAL_SERVER_ERROR.getStatusCode()) {
+                LogManager.getLogger().warn(exception.getMessage());
+                return Response.status(response.getStatus()).entity(new ExceptionWrapper(exception)).build();
+            }
+        }
         LogManager.getLogger().error(exception.getMessage(), exception);
         return Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity(new ExceptionWrapper(exception)).build();
     }
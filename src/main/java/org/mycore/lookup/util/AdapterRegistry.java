@@ -0,0 +1,64 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See http://www.mycore.de/ for details.
+ *
+ * This program is free software; you can use it, redistribute it
+ * and / or modify it under the terms of the GNU General Public License
+ * (GPL) as published by the Free Software Foundation; either version 2
+ * of the License or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program, in a file called gpl.txt or license.txt.
+ * If not, write to the Free Software Foundation Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA  02111-1307 USA
+ */
+package org.mycore.lookup.util;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.mycore.lookup.util.annotation.Stateful;
+
+/**
+ * The <code>AdapterRegistry</code> holds a single shared instance per adapter class.
+ * <p>
+ * Adapters are expected to be stateless and thread-safe. Adapters annotated with {@link Stateful}
+ * are instantiated on every call of {@link #instance(Class)}.
+ * </p>
+ */
+public class AdapterRegistry {
+
+    private static final Map<Class<?>, Object> ADAPTERS = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the adapter instance of given class.
+     * 
+     * @param cls the adapter class
+     * @return the adapter instance
+     */
+    public static <A> A instance(Class<A> cls) {
+        if (cls.isAnnotationPresent(Stateful.class)) {
+            return newInstance(cls);
+        }
+
+        return cls.cast(ADAPTERS.computeIfAbsent(cls, AdapterRegistry::newInstance));
+    }
+
+    private static <A> A newInstance(Class<A> cls) {
+        try {
+            Constructor<A> constructor = cls.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor.newInstance();
+        } catch (NoSuchMethodException | SecurityException | InstantiationException | IllegalAccessException
+            | IllegalArgumentException | InvocationTargetException e) {
+            throw new UnsupportedOperationException("Couldn't instantiate adapter " + cls + ".", e);
+        }
+    }
+}
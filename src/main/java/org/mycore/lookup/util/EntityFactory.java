@@ -96,6 +96,8 @@ public class EntityFactory<T> {
 
     private final static Map<String, Class<?>[]> CACHED_ENTITIES = new ConcurrentHashMap<>();
 
+    private final static Map<String, JAXBContext> CACHED_CONTEXTS = new ConcurrentHashMap<>();
+
     private final static Map<String, String> MARSHALLER_JSON_PROPERTIES = new HashMap<>();
 
     private final static Map<String, String> UNMARSHALLER_JSON_PROPERTIES = new HashMap<>();
@@ -367,7 +369,7 @@ public class EntityFactory<T> {
     }
 
     private Marshaller marshaller(Optional<Map<String, ?>> extraProperties) throws JAXBException {
-        JAXBContext context = JAXBContext.newInstance(populateEntities());
+        JAXBContext context = context();
         Marshaller marshaller = context.createMarshaller();
 
         Map<String, ?> props = extraProperties.orElse(new HashMap<>());
@@ -385,7 +387,7 @@ public class EntityFactory<T> {
     };
 
     private Unmarshaller unmarshaller(Optional<Map<String, ?>> extraProperties) throws JAXBException {
-        JAXBContext context = JAXBContext.newInstance(populateEntities());
+        JAXBContext context = context();
         Unmarshaller unmarshaller = context.createUnmarshaller();
 
         Map<String, ?> props = extraProperties.orElse(new HashMap<>());
@@ -431,6 +433,22 @@ public class EntityFactory<T> {
                 Collectors.toMap(e -> keyFunc.apply(e.getKey()), e -> valueFunc.apply(e.getValue()), (v1, v2) -> v2));
     }
 
+    /**
+     * Returns the {@link JAXBContext} of the entity package. The context is thread-safe and expensive to
+     * create, so it's cached per package.
+     */
+    private JAXBContext context() throws JAXBException {
+        final String pkgName = entityType.getPackage().getName();
+
+        JAXBContext context = CACHED_CONTEXTS.get(pkgName);
+        if (context == null) {
+            context = JAXBContext.newInstance(populateEntities());
+            CACHED_CONTEXTS.put(pkgName, context);
+        }
+
+        return context;
+    }
+
     private Class<?>[] populateEntities() {
         final String pkgName = entityType.getPackage().getName();
 
@@ -0,0 +1,125 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See http://www.mycore.de/ for details.
+ *
+ * This program is free software; you can use it, redistribute it
+ * and / or modify it under the terms of the GNU General Public License
+ * (GPL) as published by the Free Software Foundation; either version 2
+ * of the License or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program, in a file called gpl.txt or license.txt.
+ * If not, write to the Free Software Foundation Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA  02111-1307 USA
+ */
+package org.mycore.lookup.api.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import javax.ws.rs.core.Application;
+import javax.ws.rs.core.Response;
+
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.test.JerseyTest;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mycore.lookup.api.entity.IdType;
+import org.mycore.lookup.api.entity.MappedIdentifiers;
+import org.mycore.lookup.api.entity.Person;
+import org.mycore.lookup.api.entity.Place;
+import org.mycore.lookup.api.entity.Scheme;
+import org.mycore.lookup.backend.index.IndexManager;
+import org.mycore.lookup.common.config.Configuration;
+import org.mycore.lookup.frontend.RestFeature;
+
+public class TestExportResource extends JerseyTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private Configuration config;
+
+    /* (non-Javadoc)
+     * @see org.glassfish.jersey.test.JerseyTest#setUp()
+     */
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        config.set("Index.Path", tmpFolder.newFolder("index").getAbsolutePath());
+        config.set("Index.ExportBatchSize", 1);
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.jersey.test.JerseyTest#tearDown()
+     */
+    @Override
+    public void tearDown() throws Exception {
+        IndexManager.close();
+        super.tearDown();
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.jersey.test.JerseyTest#configure()
+     */
+    @Override
+    protected Application configure() {
+        config = Configuration.instance();
+        config.set("APP.Jersey.Resources", ExportResource.class.getPackage().getName());
+        config.set("APP.Jersey.Features", "");
+        config.set("APP.Jersey.DynamicEntities", MappedIdentifiers.class.getPackage().getName());
+
+        ResourceConfig rc = new ResourceConfig(ExportResource.class);
+        rc.register(RestFeature.class);
+        return rc;
+    }
+
+    @Test
+    public void testExport() throws Exception {
+        Person p = new Person();
+        p.setGivenName("Susi");
+        p.setFamilyName("Tester");
+        p.setMappedIds(Arrays.asList(new IdType(Scheme.get("dnb"), "1234567890")));
+        Place place = new Place();
+        place.setName("Testheim");
+        place.setMappedIds(Arrays.asList(new IdType(Scheme.get("dnb"), "123456789X")));
+        p.setPlaceOfBirth(place);
+        IndexManager.instance().set(p).get(10, TimeUnit.SECONDS);
+
+        Response res = target("/export").request().get();
+        assertEquals(200, res.getStatus());
+        List<String> lines = readLines(res.readEntity(InputStream.class));
+        assertEquals(2, lines.size());
+
+        res = target("/export").queryParam("type", "person").queryParam("gzip", true).request().get();
+        assertEquals(200, res.getStatus());
+        lines = readLines(new GZIPInputStream(res.readEntity(InputStream.class)));
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains("Testheim"));
+
+        assertEquals(400, target("/export").queryParam("type", "unknown").request().get().getStatus());
+    }
+
+    private List<String> readLines(InputStream is) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+            return reader.lines().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See http://www.mycore.de/ for details.
+ *
+ * This program is free software; you can use it, redistribute it
+ * and / or modify it under the terms of the GNU General Public License
+ * (GPL) as published by the Free Software Foundation; either version 2
+ * of the License or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program, in a file called gpl.txt or license.txt.
+ * If not, write to the Free Software Foundation Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA  02111-1307 USA
+ */
+package org.mycore.lookup.api.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import javax.ws.rs.core.Application;
+import javax.ws.rs.core.Response;
+
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.test.JerseyTest;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mycore.lookup.api.entity.MappedIdentifiers;
+import org.mycore.lookup.backend.index.IndexManager;
+import org.mycore.lookup.common.config.Configuration;
+import org.mycore.lookup.frontend.RestFeature;
+
+public class TestIndexResource extends JerseyTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private Configuration config;
+
+    /* (non-Javadoc)
+     * @see org.glassfish.jersey.test.JerseyTest#setUp()
+     */
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        config.set("Index.Path", tmpFolder.newFolder("index").getAbsolutePath());
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.jersey.test.JerseyTest#tearDown()
+     */
+    @Override
+    public void tearDown() throws Exception {
+        IndexManager.close();
+        super.tearDown();
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.jersey.test.JerseyTest#configure()
+     */
+    @Override
+    protected Application configure() {
+        config = Configuration.instance();
+        config.set("APP.Jersey.Resources", IndexResource.class.getPackage().getName());
+        config.set("APP.Jersey.Features", "");
+        config.set("APP.Jersey.DynamicEntities", MappedIdentifiers.class.getPackage().getName());
+
+        ResourceConfig rc = new ResourceConfig(IndexResource.class);
+        rc.register(RestFeature.class);
+        return rc;
+    }
+
+    @Test
+    public void testStats() {
+        Response res = target("/admin/index/stats").request().get();
+
+        assertEquals(200, res.getStatus());
+        assertTrue(res.readEntity(String.class).contains("\"numDocs\":0"));
+    }
+
+    @Test
+    public void testSnapshot() {
+        Response res = target("/admin/index/snapshot").request().post(null);
+
+        assertEquals(200, res.getStatus());
+        assertTrue(res.readEntity(String.class).contains("\"path\":"));
+    }
+}
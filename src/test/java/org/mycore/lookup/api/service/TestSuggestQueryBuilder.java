@@ -0,0 +1,58 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See http://www.mycore.de/ for details.
+ *
+ * This program is free software; you can use it, redistribute it
+ * and / or modify it under the terms of the GNU General Public License
+ * (GPL) as published by the Free Software Foundation; either version 2
+ * of the License or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program, in a file called gpl.txt or license.txt.
+ * If not, write to the Free Software Foundation Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA  02111-1307 USA
+ */
+package org.mycore.lookup.api.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.junit.Test;
+
+public class TestSuggestQueryBuilder {
+
+    private final SuggestQueryBuilder builder = new SuggestQueryBuilder(new StandardAnalyzer(), 10);
+
+    @Test
+    public void testTokens() {
+        assertEquals(Arrays.asList("goethe", "johann"), builder.tokens("Goethe, Johann"));
+        assertSame(builder.tokens("Goethe, Johann"), builder.tokens("Goethe, Johann"));
+    }
+
+    @Test
+    public void testSyntaxCharacters() {
+        Map<String, Float> fields = new LinkedHashMap<>();
+        fields.put("Person.displayName", 2f);
+        fields.put("Person.alternateNames", 1f);
+
+        BooleanQuery query = (BooleanQuery) builder.build(fields, "Goethe: \"(Johann\" Wolfgang)");
+        assertEquals(3, query.clauses().size());
+        assertTrue(builder.build(fields, "\"()\"") instanceof MatchNoDocsQuery);
+        assertTrue(builder.fuzzy(Collections.singletonList("Person.familyName"), ":", 10, 1)
+            instanceof MatchNoDocsQuery);
+    }
+}
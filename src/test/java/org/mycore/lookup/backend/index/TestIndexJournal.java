@@ -0,0 +1,170 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See http://www.mycore.de/ for details.
+ *
+ * This program is free software; you can use it, redistribute it
+ * and / or modify it under the terms of the GNU General Public License
+ * (GPL) as published by the Free Software Foundation; either version 2
+ * of the License or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program, in a file called gpl.txt or license.txt.
+ * If not, write to the Free Software Foundation Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA  02111-1307 USA
+ */
+package org.mycore.lookup.backend.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.Term;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mycore.lookup.common.config.Configuration;
+
+public class TestIndexJournal {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void testReplay() throws IOException {
+        Configuration.instance().set("Index.JournalSizeMB", 1);
+        Path path = tmpFolder.getRoot().toPath().resolve("index.journal");
+
+        Document doc = new Document();
+        doc.add(new StringField("Person.mappedIds", "DNB:1234567890", Store.YES));
+        doc.add(new TextField("Person.name", "Max Mustermann", Store.YES));
+        doc.add(new StoredField("Person.count", 42));
+        doc.add(new IntPoint("Person.year", 1970));
+
+        IndexJournal journal = new IndexJournal(path);
+        journal.append(IndexWriteAction.updateAction(null, new Term("Person.mappedIds", "DNB:1234567890"), doc));
+        journal.append(IndexWriteAction.addAction(null, new Document()));
+        journal.close();
+
+        journal = new IndexJournal(path);
+        List<IndexWriteAction> actions = journal.replay(null);
+        assertEquals(2, actions.size());
+
+        actions.get(0).forEachDocument((term, replayed) -> {
+            assertEquals(new Term("Person.mappedIds", "DNB:1234567890"), term);
+            assertEquals(doc.getFields().size(), replayed.getFields().size());
+            for (int i = 0; i < doc.getFields().size(); i++) {
+                IndexableField expected = doc.getFields().get(i);
+                IndexableField actual = replayed.getFields().get(i);
+                assertEquals(expected.name(), actual.name());
+                assertEquals(expected.stringValue(), actual.stringValue());
+                assertEquals(expected.binaryValue(), actual.binaryValue());
+                if (expected.binaryValue() == null) {
+                    assertEquals(expected.numericValue(), actual.numericValue());
+                }
+                assertEquals(expected.fieldType().indexOptions(), actual.fieldType().indexOptions());
+                assertEquals(expected.fieldType().pointDimensionCount(), actual.fieldType().pointDimensionCount());
+            }
+        });
+
+        actions.forEach(a -> a.completion().complete(null));
+        journal.close();
+
+        journal = new IndexJournal(path);
+        assertTrue(journal.replay(null).isEmpty());
+        journal.close();
+    }
+
+    @Test
+    public void testBoundedSize() throws IOException {
+        Configuration.instance().set("Index.JournalSizeMB", 1);
+        Path path = tmpFolder.getRoot().toPath().resolve("bounded.journal");
+
+        IndexJournal journal = new IndexJournal(path);
+        IndexWriteAction previous = null;
+        // ~10 MB of records, but there is always one pending record
+        for (int i = 0; i < 50000; i++) {
+            Document doc = new Document();
+            doc.add(new StringField("Person.mappedIds", "DNB:" + i, Store.YES));
+            doc.add(new TextField("Person.name", "Max Mustermann " + i, Store.YES));
+            IndexWriteAction action = IndexWriteAction.updateAction(null, new Term("Person.mappedIds", "DNB:" + i),
+                doc);
+            journal.append(action);
+            if (previous != null) {
+                previous.completion().complete(null);
+            }
+            previous = action;
+            assertTrue(Files.size(path) <= 2 * 1024 * 1024);
+        }
+        journal.close();
+
+        journal = new IndexJournal(path);
+        List<IndexWriteAction> actions = journal.replay(null);
+        assertEquals(1, actions.size());
+        actions.get(0).forEachDocument(
+            (term, doc) -> assertEquals(new Term("Person.mappedIds", "DNB:49999"), term));
+        journal.close();
+    }
+
+    @Test
+    public void testDeferredRelease() throws IOException {
+        Path path = tmpFolder.getRoot().toPath().resolve("deferred.journal");
+        IndexJournal journal = new IndexJournal(path, true);
+        IndexWriteAction first = journalAction(journal, "DNB:1");
+        first.completion().complete(null);
+        long checkpoint = journal.checkpoint();
+        IndexWriteAction second = journalAction(journal, "DNB:2");
+        second.completion().complete(null);
+        journal.release(checkpoint);
+        journal.close();
+
+        journal = new IndexJournal(path);
+        List<IndexWriteAction> actions = journal.replay(null);
+        assertEquals(1, actions.size());
+        actions.get(0).forEachDocument(
+            (term, doc) -> assertEquals(new Term("Person.mappedIds", "DNB:2"), term));
+        journal.close();
+    }
+
+    @Test
+    public void testKeepFailed() throws IOException {
+        Path path = tmpFolder.getRoot().toPath().resolve("failed.journal");
+        IndexJournal journal = new IndexJournal(path);
+        journalAction(journal, "DNB:1").completion().complete(null);
+        journalAction(journal, "DNB:2").completion()
+            .completeExceptionally(new RejectedExecutionException("Index write was rejected."));
+        journalAction(journal, "DNB:3").completion().completeExceptionally(new IOException("No space left"));
+        journal.close();
+
+        journal = new IndexJournal(path);
+        List<IndexWriteAction> actions = journal.replay(null);
+        assertEquals(1, actions.size());
+        actions.get(0).forEachDocument(
+            (term, doc) -> assertEquals(new Term("Person.mappedIds", "DNB:3"), term));
+        journal.close();
+    }
+
+    private static IndexWriteAction journalAction(IndexJournal journal, String id) throws IOException {
+        Document doc = new Document();
+        doc.add(new StringField("Person.mappedIds", id, Store.YES));
+        IndexWriteAction action = IndexWriteAction.updateAction(null, new Term("Person.mappedIds", id), doc);
+        journal.append(action);
+        return action;
+    }
+}
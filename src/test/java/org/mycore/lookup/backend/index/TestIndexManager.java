@@ -20,21 +20,36 @@
 package org.mycore.lookup.backend.index;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.io.IOException;
-import java.time.Instant;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Year;
 import java.time.YearMonth;
-import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.logging.log4j.LogManager;
+import org.apache.lucene.document.IntPoint;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.PrefixQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
 import org.junit.After;
 import org.junit.Before;
@@ -46,6 +61,7 @@ import org.mycore.lookup.api.entity.Person;
 import org.mycore.lookup.api.entity.Person.Gender;
 import org.mycore.lookup.api.entity.Place;
 import org.mycore.lookup.api.entity.Scheme;
+import org.mycore.lookup.backend.index.codec.DocumentCodec;
 import org.mycore.lookup.common.config.Configuration;
 
 /**
@@ -54,8 +70,6 @@ import org.mycore.lookup.common.config.Configuration;
  */
 public class TestIndexManager {
 
-    private static final int SLEEP_TIME = 250;
-
     private IndexManager IDX_MGR;
 
     @Rule
@@ -65,6 +79,7 @@ public class TestIndexManager {
     public void setUp() throws IOException {
         Configuration config = Configuration.instance();
         config.set("Index.Path", tmpFolder.newFolder("index").getAbsolutePath());
+        config.set("Index.WriterThreads", 2);
 
         IDX_MGR = IndexManager.instance();
     }
@@ -72,16 +87,17 @@ public class TestIndexManager {
     @After
     public void tearDown() {
         IDX_MGR.close();
+        Configuration.instance().set("Index.Shards", "");
+        Configuration.instance().set("Index.DirectoryType", "FS");
+        Configuration.instance().set("Index.RestoreFrom", (String) null);
     }
 
     @Test
-    public void testAdd() throws IOException, ParseException {
+    public void testAdd() throws InterruptedException, ExecutionException, TimeoutException {
         Person p = buildPerson();
         p.setPlaceOfBirth(buildPlace());
         p.setPlaceOfActivity(Arrays.asList(buildPlace()));
-        IDX_MGR.set(p);
-
-        waitForWriteActionDone();
+        IDX_MGR.set(p).get(10, TimeUnit.SECONDS);
 
         Query q = new TermQuery(new Term("Person.mappedIds", "DNB:1234567890"));
 
@@ -93,18 +109,14 @@ public class TestIndexManager {
     }
 
     @Test
-    public void testUpdate() throws IOException, ParseException {
+    public void testUpdate() throws InterruptedException, ExecutionException, TimeoutException {
         Person p = buildPerson();
         p.setPlaceOfBirth(buildPlace());
         p.setPlaceOfActivity(Arrays.asList(buildPlace()));
-        IDX_MGR.set(p);
-
-        waitForWriteActionDone();
+        IDX_MGR.set(p).get(10, TimeUnit.SECONDS);
 
         p.setDescription("Updated Person Object.");
-        IDX_MGR.set(p);
-
-        waitForWriteActionDone();
+        IDX_MGR.set(p).get(10, TimeUnit.SECONDS);
 
         Query q = new TermQuery(new Term("Person.mappedIds", "DNB:1234567890"));
 
@@ -116,26 +128,184 @@ public class TestIndexManager {
         assertEquals("Updated Person Object.", p2.getDescription());
     }
 
-    private void waitForWriteActionDone() {
-        Instant start = Instant.now();
-
-        boolean working = true;
-        while (working) {
-            if (start.plus(IDX_MGR.writeExecutor.getTaskCount() * SLEEP_TIME * 2, ChronoUnit.MILLIS)
-                .isAfter(Instant.now())) {
-                synchronized (IDX_MGR.writeExecutor) {
-                    try {
-                        IDX_MGR.writeExecutor.wait(1000);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                }
-                working = IDX_MGR.writeExecutor.getTaskCount() - IDX_MGR.writeExecutor.getCompletedTaskCount() > 0
-                    && IDX_MGR.writeExecutor.getActiveCount() != 0;
-            } else {
-                working = false;
-            }
+    @Test
+    public void testBulkSet() throws InterruptedException, ExecutionException, TimeoutException {
+        Person p1 = buildPerson();
+        p1.setPlaceOfBirth(buildPlace());
+
+        Person p2 = buildPerson();
+        p2.setDescription("Duplicate of first person.");
+        p2.setPlaceOfDeath(buildPlace());
+
+        IDX_MGR.set(Arrays.asList(p1, p2)).get(10, TimeUnit.SECONDS);
+
+        List<Person> hits = IDX_MGR.get(new TermQuery(new Term("Person.mappedIds", "DNB:1234567890")));
+        assertEquals(1, hits.size());
+        assertEquals("Duplicate of first person.", hits.get(0).getDescription());
+        assertNotNull(hits.get(0).getPlaceOfDeath());
+
+        List<Place> places = IDX_MGR.get(new TermQuery(new Term("Place.mappedIds", "DNB:123456789X")));
+        assertEquals(1, places.size());
+    }
+
+    @Test
+    public void testSkipUnchanged() throws InterruptedException, ExecutionException, TimeoutException {
+        IDX_MGR.set(Arrays.asList(buildPerson())).get(10, TimeUnit.SECONDS);
+        IDX_MGR.set(Arrays.asList(buildPerson())).get(10, TimeUnit.SECONDS);
+
+        assertEquals(1L, IDX_MGR.getStats().get("skippedWrites"));
+    }
+
+    @Test
+    public void testShards() throws InterruptedException, ExecutionException, TimeoutException, IOException {
+        IDX_MGR.close();
+        Configuration.instance().set("Index.Path", tmpFolder.newFolder("shards").getAbsolutePath());
+        Configuration.instance().set("Index.Shards", "Person,Place");
+        IDX_MGR = IndexManager.instance();
+
+        Person p = buildPerson();
+        p.setPlaceOfBirth(buildPlace());
+        IDX_MGR.set(Arrays.asList(p)).get(10, TimeUnit.SECONDS);
+
+        assertTrue(new File(tmpFolder.getRoot(), "shards/Person").isDirectory());
+        assertTrue(new File(tmpFolder.getRoot(), "shards/Place").isDirectory());
+
+        List<Person> hits = IDX_MGR.get(Person.class, new TermQuery(new Term("Person.mappedIds", "DNB:1234567890")),
+            1);
+        assertEquals(1, hits.size());
+        assertNotNull(hits.get(0).getPlaceOfBirth());
+        assertEquals(0, IDX_MGR.get(Place.class, new TermQuery(new Term("Person.mappedIds", "DNB:1234567890")), 1)
+            .size());
+
+        List<Place> places = IDX_MGR.get(new TermQuery(new Term("Place.mappedIds", "DNB:123456789X")));
+        assertEquals(1, places.size());
+        assertEquals(2, IDX_MGR.getStats().get("numDocs"));
+    }
+
+    @Test
+    public void testRAMSnapshot() throws InterruptedException, ExecutionException, TimeoutException, IOException {
+        IDX_MGR.close();
+        Configuration.instance().set("Index.DirectoryType", "RAM");
+        IDX_MGR = IndexManager.instance();
+
+        IDX_MGR.set(buildPerson()).get(10, TimeUnit.SECONDS);
+        IDX_MGR.close();
+
+        Configuration.instance().set("Index.DirectoryType", "NIO");
+        IDX_MGR = IndexManager.instance();
+        assertTrue(IDX_MGR.exists(buildPerson()));
+    }
+
+    @Test
+    public void testSearchCursor() throws InterruptedException, ExecutionException, TimeoutException {
+        List<Person> persons = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Person p = buildPerson();
+            p.setMappedIds(Arrays.asList(new IdType(Scheme.get("dnb"), "123456789" + i)));
+            persons.add(p);
+        }
+        IDX_MGR.set(persons).get(10, TimeUnit.SECONDS);
+
+        Query q = new PrefixQuery(new Term("Person.mappedIds", "DNB:"));
+        IndexManager.Page<Person> page = IDX_MGR.search(Person.class, q, 0, 2);
+        assertEquals(5, page.getTotalHits());
+        assertEquals(2, page.getHits().size());
+
+        Set<String> ids = new HashSet<>();
+        page.getHits().forEach(p -> ids.add(p.getMappedIds().get(0).toString()));
+        while (page.getCursor() != null) {
+            page = IDX_MGR.search(Person.class, q, page.getCursor(), 2);
+            page.getHits().forEach(p -> ids.add(p.getMappedIds().get(0).toString()));
+        }
+        assertEquals(5, ids.size());
+
+        assertEquals(1, IDX_MGR.search(Person.class, q, 4, 2).getHits().size());
+    }
+
+    @Test
+    public void testYearRange() throws InterruptedException, ExecutionException, TimeoutException {
+        List<Person> persons = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Person p = buildPerson();
+            p.setMappedIds(Arrays.asList(new IdType(Scheme.get("dnb"), "123456789" + i)));
+            p.setDateOfBirth(Year.of(1800 + i * 20));
+            persons.add(p);
         }
+        IDX_MGR.set(persons).get(10, TimeUnit.SECONDS);
+
+        Query q = new BooleanQuery.Builder()
+            .add(new PrefixQuery(new Term("Person.mappedIds", "DNB:")), Occur.MUST)
+            .add(IntPoint.newRangeQuery("Person.dateOfBirth" + DocumentCodec.YEAR_FIELD_SUFFIX, 1800, 1850),
+                Occur.FILTER)
+            .build();
+        assertEquals(3, IDX_MGR.search(Person.class, q, 0, 10).getTotalHits());
+
+        Sort sort = new Sort(new SortField("Person.dateOfBirth" + DocumentCodec.YEAR_FIELD_SUFFIX,
+            SortField.Type.INT, true));
+        IndexManager.Page<Person> page = IDX_MGR.search(Person.class, q, sort, 0, 2);
+        assertEquals(Year.of(1840), page.getHits().get(0).getDateOfBirth());
+        page = IDX_MGR.search(Person.class, q, sort, page.getCursor(), 2);
+        assertEquals(1, page.getHits().size());
+        assertEquals(Year.of(1800), page.getHits().get(0).getDateOfBirth());
+    }
+
+    @Test
+    public void testCompletion() throws InterruptedException, ExecutionException, TimeoutException {
+        IDX_MGR.set(buildPerson()).get(10, TimeUnit.SECONDS);
+
+        assertEquals(1, IDX_MGR.get(Person.class, IDX_MGR.completionQuery(Person.class, "Tes")).size());
+        assertEquals(1, IDX_MGR.get(Person.class, IDX_MGR.completionQuery(Person.class, "susa test")).size());
+        assertTrue(IDX_MGR.get(Person.class, IDX_MGR.completionQuery(Person.class, "Tesla")).isEmpty());
+        assertTrue(IDX_MGR.get(Place.class, IDX_MGR.completionQuery(Place.class, "Tes")).isEmpty());
+    }
+
+    @Test
+    public void testPhonetic() throws InterruptedException, ExecutionException, TimeoutException {
+        Person p = buildPerson();
+        p.setFamilyName("Meyer");
+        IDX_MGR.set(p).get(10, TimeUnit.SECONDS);
+
+        assertEquals(1, IDX_MGR.get(Person.class, IDX_MGR.phoneticQuery(Person.class, "Meier")).size());
+        assertEquals(1, IDX_MGR.get(Person.class, IDX_MGR.phoneticQuery(Person.class, "Mayr, Susi")).size());
+        assertTrue(IDX_MGR.get(Person.class, IDX_MGR.phoneticQuery(Person.class, "M\u00FCller")).isEmpty());
+    }
+
+    @Test
+    public void testBackupRestore() throws InterruptedException, ExecutionException, TimeoutException, IOException {
+        IDX_MGR.set(buildPerson()).get(10, TimeUnit.SECONDS);
+        Path backup = IDX_MGR.backup();
+
+        // writes continue after the backup, but aren't part of it
+        IDX_MGR.set(buildPlace()).get(10, TimeUnit.SECONDS);
+        IDX_MGR.close();
+
+        Configuration.instance().set("Index.Path", tmpFolder.newFolder("restored").getAbsolutePath());
+        Configuration.instance().set("Index.RestoreFrom", backup.toString());
+        IDX_MGR = IndexManager.instance();
+
+        assertTrue(IDX_MGR.exists(buildPerson()));
+        assertFalse(IDX_MGR.exists(buildPlace()));
+    }
+
+    @Test
+    public void testWarmup() throws InterruptedException, ExecutionException, TimeoutException, IOException {
+        IDX_MGR.set(buildPerson()).get(10, TimeUnit.SECONDS);
+        Query query = new BooleanQuery.Builder()
+            .add(new TermQuery(new Term("Person.familyName", "tester")), Occur.MUST)
+            .add(new PrefixQuery(new Term("Person.mappedIds", "DNB:")), Occur.MUST).build();
+        IDX_MGR.get(query);
+        IDX_MGR.get(new TermQuery(new Term("Person.mappedIds", "DNB:1234567890")));
+        IDX_MGR.close();
+
+        List<String> queries = Files.readAllLines(
+            Paths.get(Configuration.instance().getString("Index.Path") + ".queries"));
+        assertEquals(Arrays.asList("(+Person.familyName:tester +Person.mappedIds:DNB\\:*)"), queries);
+
+        IDX_MGR = IndexManager.instance();
+        assertEquals(Arrays.asList(query),
+            new IndexWarmer(Paths.get(Configuration.instance().getString("Index.Path") + ".queries"),
+                IDX_MGR.getAnalyzer()).queries());
+        IndexManager.warmup();
     }
 
     private Person buildPerson() {
@@ -0,0 +1,128 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See http://www.mycore.de/ for details.
+ *
+ * This program is free software; you can use it, redistribute it
+ * and / or modify it under the terms of the GNU General Public License
+ * (GPL) as published by the Free Software Foundation; either version 2
+ * of the License or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program, in a file called gpl.txt or license.txt.
+ * If not, write to the Free Software Foundation Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA  02111-1307 USA
+ */
+package org.mycore.lookup.backend.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.Term;
+import org.junit.Test;
+
+public class TestIndexWriteQueue {
+
+    @Test
+    public void testOrderPerTerm() {
+        IndexWriteQueue queue = new IndexWriteQueue();
+        IndexWriteAction a1 = update("a");
+        IndexWriteAction a2 = update("a");
+        IndexWriteAction b1 = update("b");
+        queue.offer(a1);
+        assertSame(a1, queue.poll());
+
+        queue.offer(a2);
+        queue.offer(b1);
+        // a2 must wait until a1 is released
+        assertSame(b1, queue.poll());
+        assertNull(queue.poll());
+
+        queue.release(a1);
+        assertSame(a2, queue.poll());
+    }
+
+    @Test
+    public void testCoalesceQueued() {
+        IndexWriteQueue queue = new IndexWriteQueue();
+        IndexWriteAction a1 = update("a");
+        IndexWriteAction b1 = update("b");
+        IndexWriteAction a2 = update("a");
+        queue.offer(a1);
+        queue.offer(b1);
+        queue.offer(a2);
+
+        assertEquals(2, queue.size());
+        assertEquals(1, queue.getCoalescedCount());
+        assertSame(b1, queue.poll());
+        assertSame(a2, queue.poll());
+
+        a2.completion().complete(null);
+        assertTrue(a1.completion().isDone());
+    }
+
+    @Test
+    public void testShed() {
+        IndexWriteQueue queue = new IndexWriteQueue(1, IndexWriteQueue.OverflowPolicy.SHED, false);
+        assertTrue(queue.offer(update("a")));
+        assertFalse(queue.offer(update("b")));
+        assertEquals(1, queue.getQueuedDocs());
+    }
+
+    @Test
+    public void testOfferTimeout() throws InterruptedException {
+        IndexWriteQueue queue = new IndexWriteQueue(1, IndexWriteQueue.OverflowPolicy.BLOCK, false);
+        assertTrue(queue.offer(update("a"), 10, TimeUnit.MILLISECONDS));
+        assertFalse(queue.offer(update("b"), 10, TimeUnit.MILLISECONDS));
+        assertEquals(1, queue.getQueuedDocs());
+    }
+
+    @Test
+    public void testPutWaitsOnShed() throws InterruptedException {
+        IndexWriteQueue queue = new IndexWriteQueue(1, IndexWriteQueue.OverflowPolicy.SHED, false);
+        IndexWriteAction a = update("a");
+        IndexWriteAction b = update("b");
+        queue.put(a);
+        Thread producer = new Thread(() -> {
+            try {
+                queue.put(b);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        assertSame(a, queue.poll());
+        producer.join(10000);
+        assertSame(b, queue.poll());
+    }
+
+    @Test
+    public void testCoalesce() {
+        IndexWriteQueue queue = new IndexWriteQueue(1, IndexWriteQueue.OverflowPolicy.COALESCE, false);
+        IndexWriteAction a1 = update("a");
+        IndexWriteAction a2 = update("a");
+        queue.offer(a1);
+        queue.offer(a2);
+
+        assertEquals(1, queue.size());
+        assertEquals(1, queue.getCoalescedCount());
+        assertSame(a2, queue.poll());
+
+        a2.completion().complete(null);
+        assertTrue(a1.completion().isDone());
+    }
+
+    private static IndexWriteAction update(String id) {
+        return IndexWriteAction.updateAction(null, new Term("id", id), new Document());
+    }
+}
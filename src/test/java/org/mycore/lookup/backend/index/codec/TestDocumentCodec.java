@@ -0,0 +1,78 @@
+/*
+ * This file is part of ***  M y C o R e  ***
+ * See http://www.mycore.de/ for details.
+ *
+ * This program is free software; you can use it, redistribute it
+ * and / or modify it under the terms of the GNU General Public License
+ * (GPL) as published by the Free Software Foundation; either version 2
+ * of the License or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program, in a file called gpl.txt or license.txt.
+ * If not, write to the Free Software Foundation Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA  02111-1307 USA
+ */
+package org.mycore.lookup.backend.index.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.time.YearMonth;
+import java.util.Arrays;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.Term;
+import org.junit.Test;
+import org.mycore.lookup.api.entity.IdType;
+import org.mycore.lookup.api.entity.Person;
+import org.mycore.lookup.api.entity.Person.Gender;
+import org.mycore.lookup.api.entity.Place;
+import org.mycore.lookup.api.entity.Scheme;
+
+public class TestDocumentCodec {
+
+    @Test
+    public void testRoundTrip() {
+        Place place = new Place();
+        place.setName("Testheim");
+        place.setMappedIds(Arrays.asList(new IdType(Scheme.get("dnb"), "123456789X")));
+
+        Person p = new Person();
+        p.setGender(Gender.female);
+        p.setGivenName("Susi");
+        p.setFamilyName("Tester");
+        p.setDateOfBirth(YearMonth.parse("1977-11"));
+        p.setAlternateNames(Arrays.asList("Tester, Susanne", "Tester, S."));
+        p.setMappedIds(Arrays.asList(new IdType(Scheme.get("dnb"), "1234567890")));
+        p.setPlaceOfBirth(place);
+        p.setPlaceOfActivity(Arrays.asList(place));
+
+        DocumentCodec<Person> codec = DocumentCodec.of(Person.class);
+        assertSame(codec, DocumentCodec.of(p));
+        assertEquals(new Term("Person.mappedIds", "DNB:1234567890"), codec.idTerm(p));
+        assertEquals(Arrays.asList(place), codec.references(p));
+
+        Document doc = codec.encode(p);
+        assertEquals("Place.mappedIds:DNB:123456789X", doc.get("Person.placeOfBirth"));
+
+        Person p2 = DocumentCodec.<Person> of(doc).decode(doc,
+            refId -> "Place.mappedIds:DNB:123456789X".equals(refId) ? place : null);
+
+        assertEquals(Gender.female, p2.getGender());
+        assertEquals("Tester", p2.getFamilyName());
+        assertEquals(YearMonth.parse("1977-11"), p2.getDateOfBirth());
+        assertEquals(p.getAlternateNames(), p2.getAlternateNames());
+        assertEquals(p.getMappedIds(), p2.getMappedIds());
+        assertNotNull(p2.getPlaceOfBirth());
+        assertEquals(1, p2.getPlaceOfActivity().size());
+        assertNull(p2.getPlaceOfDeath());
+    }
+
+}